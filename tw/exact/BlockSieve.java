@@ -690,7 +690,7 @@ public class BlockSieve{
   }
 
   public XBitSet put(XBitSet bs, XBitSet value){
-    long longs[] = bs.toLongArray();
+    long longs[] = bs.words;
     Node node = root, parent = null;
 
     int i = 0, j1 = 0;
@@ -843,14 +843,14 @@ public class BlockSieve{
 
   public void collectSuperblocks(
       XBitSet component, XBitSet neighbors, ArrayList< XBitSet > list){
-    root.filterSuperblocks(component.toLongArray(), 
-        neighbors.toLongArray(), 0, list);
+    root.filterSuperblocks(component.words, 
+        neighbors.words, 0, list);
   }
 
   public void collectSubblocks(
       XBitSet component, XBitSet neighbors, ArrayList< XBitSet > list){
-    root.filterSubblocks(component.toLongArray(), 
-        neighbors.toLongArray(), 0, list);
+    root.filterSubblocks(component.words, 
+        neighbors.words, 0, list);
   }
 
   public int size(){
@@ -0,0 +1,129 @@
+package tw.exact;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the connected components of a graph minus a separator,
+ * with a flag for each component telling whether it is full, that is,
+ * adjacent to every vertex of the separator.  The entries are kept in
+ * the order of their last access and the least recently accessed ones
+ * are evicted when the estimated heap size of the entries exceeds the
+ * budget.  The cache belongs to one graph, which clears it when an
+ * edge is added.  The cached sets are shared and must not be changed.
+ * Thread-safe.
+ */
+public class ComponentCache {
+  /**
+   * The components of the graph minus a separator, in the order of
+   * their smallest vertices
+   */
+  public static class Components {
+    public final XBitSet[] components;
+    public final boolean[] full;
+
+    public Components(XBitSet[] components, boolean[] full) {
+      this.components = components;
+      this.full = full;
+    }
+  }
+
+  /**
+   * The estimated heap bytes of an object header, an array header and 
+   * a map entry
+   */
+  static final int OBJECT_BYTES = 16;
+  static final int ARRAY_BYTES = 16;
+  static final int ENTRY_BYTES = 48;
+
+  long maxBytes;
+  long bytes;
+  long hits;
+  long misses;
+
+  LinkedHashMap<XBitSet, Components> map = 
+      new LinkedHashMap<XBitSet, Components>(16, 0.75f, true);
+
+  /**
+   * Creates a cache whose entries take at most about the given number
+   * of bytes on the heap
+   * @param maxBytes the budget in bytes
+   */
+  public ComponentCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the cached components of the graph minus the given
+   * separator, counting a hit or a miss
+   * @param separator the separator
+   * @return the components, or null if not cached
+   */
+  public synchronized Components get(XBitSet separator) {
+    Components result = map.get(separator);
+    if (result == null) {
+      misses++;
+    }
+    else {
+      hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Caches the components of the graph minus the given separator,
+   * evicting the least recently used entries if over the budget
+   * @param separator the separator, which is copied
+   * @param components the components
+   */
+  public synchronized void put(XBitSet separator, Components components) {
+    XBitSet key = (XBitSet) separator.clone();
+    Components old = map.put(key, components);
+    if (old != null) {
+      bytes -= bytes(key, old);
+    }
+    bytes += bytes(key, components);
+    Iterator<Map.Entry<XBitSet, Components>> it = map.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      Map.Entry<XBitSet, Components> eldest = it.next();
+      bytes -= bytes(eldest.getKey(), eldest.getValue());
+      it.remove();
+    }
+  }
+
+  /**
+   * Estimates the heap bytes of an entry, counting the components as
+   * if they were not shared with anything else
+   */
+  static long bytes(XBitSet key, Components components) {
+    long result = ENTRY_BYTES + 2 * OBJECT_BYTES + 3 * ARRAY_BYTES + 
+        8 * key.words.length;
+    for (XBitSet c : components.components) {
+      result += OBJECT_BYTES + ARRAY_BYTES + 8 * c.words.length + 9;
+    }
+    return result;
+  }
+
+  public synchronized void clear() {
+    map.clear();
+    bytes = 0;
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+
+  public synchronized long hits() {
+    return hits;
+  }
+
+  public synchronized long misses() {
+    return misses;
+  }
+
+  public synchronized String toString() {
+    return "component cache: " + map.size() + " entries, " + 
+        (bytes >> 10) + " KB, " + hits + " hits, " + misses + " misses";
+  }
+}
@@ -0,0 +1,140 @@
+package tw.exact;
+
+/**
+ * Enumerates the connected components of a graph minus a set of
+ * removed vertices, in the order of their smallest vertices, by a
+ * breadth-first search over the words of the neighbor sets.  The
+ * search works in scratch words owned by the finder and writes each
+ * component into a set supplied by the caller, so that enumerating
+ * allocates nothing.  While searching a component, the finder also
+ * collects its neighbors in a given boundary set, to tell whether the
+ * component is full, that is, adjacent to every boundary vertex.
+ *
+ * A finder holds the state of one enumeration at a time and must not
+ * be shared between threads.
+ */
+public class ComponentFinder {
+  Graph g;
+  int nWords;
+
+  /**
+   * The vertices neither removed nor in a component found so far
+   */
+  long[] rest;
+
+  long[] component;
+  long[] frontier;
+  long[] reached;
+  long[] boundary;
+  long[] touched;
+
+  /**
+   * Whether the component found last is full
+   */
+  boolean full;
+
+  public ComponentFinder(Graph g) {
+    this.g = g;
+    nWords = Math.max(1, (g.n + 63) / 64);
+    rest = new long[nWords];
+    component = new long[nWords];
+    frontier = new long[nWords];
+    reached = new long[nWords];
+    boundary = new long[nWords];
+    touched = new long[nWords];
+  }
+
+  /**
+   * Starts enumerating the components of the graph minus the removed
+   * vertices, testing their fullness with respect to the boundary
+   * @param removed the removed vertices
+   * @param boundary the boundary vertices, usually among the removed
+   */
+  public void start(XBitSet removed, XBitSet boundary) {
+    copy(g.all.words, rest);
+    long[] r = removed.words;
+    for (int i = 0; i < nWords && i < r.length; i++) {
+      rest[i] &= ~r[i];
+    }
+    copy(boundary.words, this.boundary);
+  }
+
+  /**
+   * Finds the next component, writing it into the given set
+   * @param result the set to receive the component
+   * @return {@code false} if there are no more components, in which
+   * case the given set is not changed
+   */
+  public boolean next(XBitSet result) {
+    int v = first(rest);
+    if (v < 0) {
+      return false;
+    }
+    for (int i = 0; i < nWords; i++) {
+      component[i] = 0;
+      frontier[i] = 0;
+      touched[i] = 0;
+    }
+    component[v >>> 6] = 1L << v;
+    frontier[v >>> 6] = 1L << v;
+    boolean growing = true;
+    while (growing) {
+      for (int i = 0; i < nWords; i++) {
+        reached[i] = 0;
+      }
+      for (int i = 0; i < nWords; i++) {
+        for (long word = frontier[i]; word != 0; word &= word - 1) {
+          long[] nb = g.neighborSet[i * 64 + 
+                                    Long.numberOfTrailingZeros(word)].words;
+          for (int j = 0; j < nWords && j < nb.length; j++) {
+            reached[j] |= nb[j];
+          }
+        }
+      }
+      growing = false;
+      for (int i = 0; i < nWords; i++) {
+        touched[i] |= reached[i] & boundary[i];
+        long fresh = reached[i] & rest[i] & ~component[i];
+        frontier[i] = fresh;
+        if (fresh != 0) {
+          component[i] |= fresh;
+          growing = true;
+        }
+      }
+    }
+    full = true;
+    for (int i = 0; i < nWords; i++) {
+      rest[i] &= ~component[i];
+      if (touched[i] != boundary[i]) {
+        full = false;
+      }
+    }
+    result.assign(component, nWords);
+    return true;
+  }
+
+  /**
+   * Returns whether the component found last is adjacent to every 
+   * boundary vertex
+   */
+  public boolean isFull() {
+    return full;
+  }
+
+  void copy(long[] from, long[] to) {
+    int n = Math.min(from.length, nWords);
+    System.arraycopy(from, 0, to, 0, n);
+    for (int i = n; i < nWords; i++) {
+      to[i] = 0;
+    }
+  }
+
+  static int first(long[] a) {
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(a[i]);
+      }
+    }
+    return -1;
+  }
+}
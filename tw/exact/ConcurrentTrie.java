@@ -0,0 +1,67 @@
+package tw.exact;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A variant of {@code NewTrie} that can be shared between threads.
+ * Queries take no locks: child and S-set arrays are copied on write and
+ * published through volatile fields, and the subtrie summaries are word
+ * arrays that writers only ever grow (unions) or shrink (intersections)
+ * with atomic updates.  A writer locks a single node, and only while it
+ * adds a child or an S-set to that node, so concurrent puts contend only
+ * when they meet in the same node.
+ *
+ * A query running concurrently with a put may or may not see the entry
+ * being put, but always sees every entry whose put completed before the
+ * query started.  The separators returned are the stored instances, not
+ * copies.
+ */
+class ConcurrentTrie implements SupersetDataStructure {
+    private int targetWidth;
+    private int words;
+    private ConcurrentTrieNode root;
+    private AtomicInteger size = new AtomicInteger();
+
+    public ConcurrentTrie(int n, int targetWidth) {
+        this.targetWidth = targetWidth;
+        words = (n + 63) / 64;
+        long[] all = new long[words];
+        for (int v = 0; v < n; v++) {
+            all[v >> 6] |= 1L << v;
+        }
+        root = new ConcurrentTrieNode(-1, new long[words], all);
+    }
+
+    public void put(XBitSet SSet, XBitSet NSet) {
+        long[] s = toWords(SSet);
+        long[] ns = toWords(NSet);
+        root.merge(s, ns);
+        ConcurrentTrieNode node = root;
+        // iterate over elements of NSet
+        for (int i = NSet.nextSetBit(0); i >= 0; i = NSet.nextSetBit(i+1)) {
+            node = node.getOrAddChildNode(i, s, ns);
+        }
+        node.addSSet(s, (XBitSet) NSet.clone());
+        size.incrementAndGet();
+    }
+
+    public void collectSuperblocks(XBitSet component, XBitSet neighbours,
+            ArrayList<XBitSet> list) {
+        int k = targetWidth + 1 - neighbours.cardinality();
+        if (k >= 0) {
+            root.query(toWords(component), toWords(neighbours), k, k, list);
+        }
+    }
+
+    public int[] getSizes() {
+        return new int[] {size.get()};
+    }
+
+    private long[] toWords(XBitSet set) {
+        long[] result = new long[words];
+        System.arraycopy(set.words, 0, result, 0,
+                Math.min(set.words.length, words));
+        return result;
+    }
+}
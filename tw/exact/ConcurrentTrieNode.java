@@ -0,0 +1,134 @@
+package tw.exact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class ConcurrentTrieNode {
+    private static final ConcurrentTrieNode[] NO_CHILDREN =
+            new ConcurrentTrieNode[0];
+    private static final long[][] NO_SSETS = new long[0][];
+
+    private volatile ConcurrentTrieNode[] children = NO_CHILDREN;
+    private final AtomicLongArray subtrieUnionOfSSets;
+    private final AtomicLongArray subtrieIntersectionOfNSets;
+    private final int key;
+    private volatile long[][] SSets = NO_SSETS;
+    private volatile XBitSet NSet;
+
+    ConcurrentTrieNode(int key, long[] unionOfSSets,
+            long[] intersectionOfNSets) {
+        this.key = key;
+        subtrieUnionOfSSets = new AtomicLongArray(unionOfSSets);
+        subtrieIntersectionOfNSets = new AtomicLongArray(intersectionOfNSets);
+    }
+
+    /**
+     * Adds an entry with the given S-set to the summaries of this subtrie.
+     */
+    void merge(long[] SSet, long[] NSet) {
+        for (int i = 0; i < SSet.length; i++) {
+            long old = subtrieUnionOfSSets.get(i);
+            while ((old | SSet[i]) != old) {
+                if (subtrieUnionOfSSets.compareAndSet(i, old, old | SSet[i])) {
+                    break;
+                }
+                old = subtrieUnionOfSSets.get(i);
+            }
+            old = subtrieIntersectionOfNSets.get(i);
+            while ((old & NSet[i]) != old) {
+                if (subtrieIntersectionOfNSets.compareAndSet(i, old, old & NSet[i])) {
+                    break;
+                }
+                old = subtrieIntersectionOfNSets.get(i);
+            }
+        }
+    }
+
+    synchronized void addSSet(long[] SSet, XBitSet NSet) {
+        if (this.NSet == null) {
+            // the N-set of every entry ending here is the path to this node
+            this.NSet = NSet;
+        }
+        long[][] newSSets = Arrays.copyOf(SSets, SSets.length + 1);
+        newSSets[SSets.length] = SSet;
+        SSets = newSSets;
+    }
+
+    ConcurrentTrieNode getOrAddChildNode(int key, long[] SSet, long[] NSet) {
+        ConcurrentTrieNode child = findChild(key, children);
+        if (child == null) {
+            synchronized (this) {
+                child = findChild(key, children);
+                if (child == null) {
+                    // Node not found; add and return it
+                    child = new ConcurrentTrieNode(key, SSet.clone(),
+                            NSet.clone());
+                    ConcurrentTrieNode[] newChildren =
+                            Arrays.copyOf(children, children.length + 1);
+                    newChildren[children.length] = child;
+                    children = newChildren;
+                    return child;
+                }
+            }
+        }
+        child.merge(SSet, NSet);
+        return child;
+    }
+
+    private static ConcurrentTrieNode findChild(int key,
+            ConcurrentTrieNode[] children) {
+        for (ConcurrentTrieNode child : children) {
+            if (child.key == key) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    void query(long[] queryS, long[] queryN, int k,
+            int budget, ArrayList<XBitSet> out_list) {
+        int excess = 0;
+        for (int i = 0; i < queryN.length; i++) {
+            excess += Long.bitCount(subtrieIntersectionOfNSets.get(i) & ~queryN[i]);
+        }
+        if (excess > k) {
+            return;
+        }
+        if (!isSubset(queryS, subtrieUnionOfSSets)) {
+            return;
+        }
+        long[][] SSets = this.SSets;
+        for (long[] SSet : SSets) {
+            if (isSubset(queryS, SSet)) {
+                out_list.add(NSet);
+                break;
+            }
+        }
+        for (ConcurrentTrieNode child : children) {
+            int newBudget = (queryN[child.key >> 6] & (1L << child.key)) != 0 ?
+                    budget : budget - 1;
+            if (newBudget >= 0) {
+                child.query(queryS, queryN, k, newBudget, out_list);
+            }
+        }
+    }
+
+    private static boolean isSubset(long[] a, AtomicLongArray b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & ~b.get(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSubset(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & ~b[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
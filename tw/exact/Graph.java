@@ -11,11 +11,9 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Random;
 
 /**
@@ -64,6 +62,12 @@ public class Graph {
    */
   public XBitSet all;
 
+  /**
+   * the cache of the components of this graph minus separators;
+   * null if not caching
+   */
+  ComponentCache componentCache;
+
   /*
    * variables used in the DFS aglgorithms fo
    * connected componetns and
@@ -96,6 +100,26 @@ public class Graph {
     }
   }
 
+  /**
+   * Construct a graph with the adjacency lists read by a 
+   * {@code GrReader}
+   * @param reader the reader
+   */
+  Graph(GrReader reader) {
+    this(reader.n);
+    for (int v = 0; v < n; v++) {
+      int start = reader.offsets[v];
+      int end = reader.offsets[v + 1];
+      degree[v] = end - start;
+      if (start < end) {
+        neighbor[v] = Arrays.copyOfRange(reader.adjacency, start, end);
+      }
+      for (int i = start; i < end; i++) {
+        neighborSet[v].set(reader.adjacency[i]);
+      }
+    }
+  }
+
   /**
    * Add an edge between two specified vertices.
    * This is done by adding each vertex to the adjacent list
@@ -131,6 +155,22 @@ public class Graph {
       neighborSet[u] = new XBitSet(n);
     }
     neighborSet[u].set(v);
+    if (componentCache != null) {
+      componentCache.clear();
+    }
+  }
+
+  /**
+   * Sets the cache used by {@code getComponents},
+   * {@code getFullComponents} and {@code components}
+   * @param componentCache the cache; null for no caching
+   */
+  public void setComponentCache(ComponentCache componentCache) {
+    this.componentCache = componentCache;
+  }
+
+  public ComponentCache getComponentCache() {
+    return componentCache;
   }
 
   /**
@@ -303,36 +343,7 @@ public class Graph {
    */
   public static Graph readGraph(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
+      return new Graph(new GrReader(file));
     } catch (FileNotFoundException e) {
       e.printStackTrace();
     } catch (IOException e) {
@@ -351,41 +362,7 @@ public class Graph {
    */
   public static Graph readGraph(InputStream is) {
     try {
-      BufferedReader br = new BufferedReader(
-          new InputStreamReader(is));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        
-        br.close();
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return new Graph(new GrReader(is));
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -540,6 +517,12 @@ public class Graph {
    */
   public ArrayList<XBitSet> getComponents(XBitSet separator) {
     ArrayList<XBitSet> result = new ArrayList<XBitSet>();
+    if (componentCache != null) {
+      for (XBitSet c: components(separator).components) {
+        result.add(c);
+      }
+      return result;
+    }
     XBitSet rest = all.subtract(separator);
     for (int v = rest.nextSetBit(0); v >= 0;
         v = rest.nextSetBit(v + 1)) {
@@ -571,6 +554,15 @@ public class Graph {
    */
   public ArrayList<XBitSet> getFullComponents(XBitSet separator) {
     ArrayList<XBitSet> result = new ArrayList<XBitSet>();
+    if (componentCache != null) {
+      ComponentCache.Components components = components(separator);
+      for (int i = 0; i < components.full.length; i++) {
+        if (components.full[i]) {
+          result.add(components.components[i]);
+        }
+      }
+      return result;
+    }
     XBitSet rest = all.subtract(separator);
     for (int v = rest.nextSetBit(0); v >= 0;
         v = rest.nextSetBit(v + 1)) {
@@ -594,6 +586,43 @@ public class Graph {
     return result;
   }
 
+  /**
+   * Returns the connected components of this target graph after
+   * the removal of the vertices in the given separator, with their
+   * fullness, from the component cache if cached there.
+   * The returned sets must not be changed.
+   * @param separator set of vertices to be removed
+   * @return the components
+   */
+  public ComponentCache.Components components(XBitSet separator) {
+    ComponentCache cache = componentCache;
+    ComponentCache.Components result = 
+        cache == null ? null : cache.get(separator);
+    if (result != null) {
+      return result;
+    }
+    ArrayList<XBitSet> list = new ArrayList<XBitSet>();
+    ArrayList<Boolean> fullness = new ArrayList<Boolean>();
+    ComponentFinder finder = new ComponentFinder(this);
+    finder.start(separator, separator);
+    XBitSet c = new XBitSet(n);
+    while (finder.next(c)) {
+      list.add(c);
+      fullness.add(finder.isFull());
+      c = new XBitSet(n);
+    }
+    boolean[] full = new boolean[list.size()];
+    for (int i = 0; i < full.length; i++) {
+      full[i] = fullness.get(i);
+    }
+    result = new ComponentCache.Components(
+        list.toArray(new XBitSet[list.size()]), full);
+    if (cache != null) {
+      cache.put(separator, result);
+    }
+    return result;
+  }
+
   /**
    * Checks if the given induced subgraph of this target graph is connected.
    * @param vertices the set of vertices inducing the subraph
@@ -626,7 +655,7 @@ public class Graph {
    * @param vertices the set of vertices inducing the subraph
    * @return {@code true} if the subgrpah is biconnected; {@code false} otherwise
    */
-  public boolean isBiconnected(BitSet vertices) {
+  public boolean isBiconnected(XBitSet vertices) {
 //    if (!isConnected(vertices)) {
 //      return false;
 //    }
@@ -700,12 +729,12 @@ public class Graph {
    * @param vertices the set of vertices inducing the subraph
    * @return {@code true} if the subgrpah is triconnected; {@code false} otherwise
    */
-  public boolean isTriconnected(BitSet vertices) {
+  public boolean isTriconnected(XBitSet vertices) {
     if (!isBiconnected(vertices)) {
       return false;
     }
 
-    BitSet work = (BitSet) vertices.clone();
+    XBitSet work = (XBitSet) vertices.clone();
     int prev = -1;
     for (int v = vertices.nextSetBit(0); v >= 0;
         v = vertices.nextSetBit(v + 1)) {
@@ -731,7 +760,7 @@ public class Graph {
    * @param vertices the set of vertices of the subgraph
    * @return the set of articulation vertices
    */
-  public XBitSet articulations(BitSet vertices) {
+  public XBitSet articulations(XBitSet vertices) {
     articulationSet = new XBitSet(n);
     dfCount = 1;
     dfn = new int[n];
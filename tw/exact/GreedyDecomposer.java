@@ -34,8 +34,17 @@ public class GreedyDecomposer {
   Set<XBitSet> safes;
   SafeSeparator ss;
   
+  /**
+   * The source of the random choice among vertices of the minimum
+   * cost; null to choose the smallest such vertex
+   */
   Random random;
 
+  /**
+   * The remaining vertices ordered by their costs
+   */
+  VertexHeap heap;
+
   public enum Mode {
     fill, defect, degree, safeFirst
 //    fill, defect, degree
@@ -46,7 +55,20 @@ public class GreedyDecomposer {
   }
 
   public GreedyDecomposer(Bag whole, Mode mode) {
+    this(whole, mode, null);
+  }
+
+  /**
+   * Creates a greedy decomposer that breaks ties between vertices of
+   * the minimum cost at random
+   * @param whole the bag to decompose
+   * @param mode the cost of eliminating a vertex
+   * @param random the source of the tie breaking; null to choose the
+   * smallest vertex
+   */
+  public GreedyDecomposer(Bag whole, Mode mode, Random random) {
     this.whole = whole;
+    this.random = random;
     this.mode = mode;
 
     // need a copy as we fill edges
@@ -62,22 +84,14 @@ public class GreedyDecomposer {
     whole.initializeForDecomposition();
     frontier = new ArrayList<>();
     remaining = (XBitSet) g.all.clone();
+    heap = new VertexHeap(g.n, random);
+    for (int v = remaining.nextSetBit(0); v >= 0; 
+        v = remaining.nextSetBit(v + 1)) {
+      heap.add(v, costOf(v));
+    }
     
     while (!remaining.isEmpty()) {
-      int vmin = remaining.nextSetBit(0);
-      int minCost = costOf(vmin);
-      
-//      ArrayList<Integer> minFillVertices = new ArrayList<>();
-//      minFillVertices.add(vmin);
-      
-      for (int v = remaining.nextSetBit(vmin + 1);
-          v >= 0; v = remaining.nextSetBit(v + 1)) {
-        int cost = costOf(v);
-        if (cost < minCost) {
-          minCost = cost;
-          vmin = v;
-        }
-      }
+      int vmin = heap.poll();
 
       ArrayList<Separator> joined = new ArrayList<>();
       
@@ -114,6 +128,8 @@ public class GreedyDecomposer {
               System.out.println("cleared " + vmin + " from" +
                   uniqueSeparator);
             }
+            // only the neighbors of vmin see their costs changed
+            updateCosts(g.neighborSet[vmin]);
             continue;
           }
       }
@@ -161,11 +177,29 @@ public class GreedyDecomposer {
       }
       
       remaining.clear(vmin);
+
+      // the new edges are within toBeAClique, which contains the
+      // neighbors of vmin: only the costs of the vertices in its
+      // closed neighborhood change
+      updateCosts(g.closedNeighborSet(toBeAClique));
     }
+    heap = null;
     
     whole.setWidth();
   }
 
+  /**
+   * Recomputes the costs of the remaining vertices among the given ones
+   */
+  void updateCosts(XBitSet vertices) {
+    for (int v = vertices.nextSetBit(0); v >= 0; 
+        v = vertices.nextSetBit(v + 1)) {
+      if (remaining.get(v)) {
+        heap.update(v, costOf(v));
+      }
+    }
+  }
+
   int costOf(int v) {
     switch (mode) {
     case fill: return countFill(v);
@@ -220,4 +254,116 @@ public class GreedyDecomposer {
     XBitSet ns = g.neighborSet[v].intersectWith(remaining);
     return ns.cardinality();
   }
+
+  /**
+   * A binary heap of vertices keyed by their costs and then by their
+   * ranks, which are the vertex numbers themselves, so that the 
+   * smallest vertex of the minimum cost comes first, or a random
+   * permutation of them, so that a random one does.  It knows the 
+   * position of each vertex, so that the cost of a vertex can be 
+   * changed in logarithmic time.
+   */
+  static class VertexHeap {
+    int[] heap;
+    int size;
+    int[] position;
+    int[] cost;
+    int[] rank;
+
+    VertexHeap(int n, Random random) {
+      heap = new int[n];
+      position = new int[n];
+      cost = new int[n];
+      rank = new int[n];
+      for (int v = 0; v < n; v++) {
+        rank[v] = v;
+        position[v] = -1;
+      }
+      if (random != null) {
+        for (int i = n - 1; i > 0; i--) {
+          int j = random.nextInt(i + 1);
+          int r = rank[i];
+          rank[i] = rank[j];
+          rank[j] = r;
+        }
+      }
+    }
+
+    boolean less(int v, int w) {
+      return cost[v] < cost[w] || 
+          cost[v] == cost[w] && rank[v] < rank[w];
+    }
+
+    void add(int v, int c) {
+      cost[v] = c;
+      heap[size] = v;
+      position[v] = size;
+      size++;
+      siftUp(position[v]);
+    }
+
+    /**
+     * Removes and returns the first vertex
+     */
+    int poll() {
+      int v = heap[0];
+      position[v] = -1;
+      size--;
+      if (size > 0) {
+        heap[0] = heap[size];
+        position[heap[0]] = 0;
+        siftDown(0);
+      }
+      return v;
+    }
+
+    void update(int v, int c) {
+      int old = cost[v];
+      cost[v] = c;
+      if (c < old) {
+        siftUp(position[v]);
+      }
+      else if (c > old) {
+        siftDown(position[v]);
+      }
+    }
+
+    void siftUp(int i) {
+      int v = heap[i];
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        int p = heap[parent];
+        if (!less(v, p)) {
+          break;
+        }
+        heap[i] = p;
+        position[p] = i;
+        i = parent;
+      }
+      heap[i] = v;
+      position[v] = i;
+    }
+
+    void siftDown(int i) {
+      int v = heap[i];
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && less(heap[child + 1], heap[child])) {
+          child++;
+        }
+        int c = heap[child];
+        if (!less(c, v)) {
+          break;
+        }
+        heap[i] = c;
+        position[c] = i;
+        i = child;
+      }
+      heap[i] = v;
+      position[v] = i;
+    }
+  }
 }
@@ -13,12 +13,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public class IODecomposer {
 
@@ -35,7 +40,7 @@ public class IODecomposer {
 
   Queue<IBlock> readyQueue;
 
-  ArrayList<PMC> pendingEndorsers;
+  List<PMC> pendingEndorsers;
 
 //  Set<XBitSet> processed;
 
@@ -44,6 +49,20 @@ public class IODecomposer {
   Map<XBitSet, Block> blockCache;
   
   Map<XBitSet, IBlock> iBlockCache;
+
+  /**
+   * The canonical instances and ids of the components and separators
+   * of blocks, by which the caches are indexed; null unless in the
+   * single-threaded mode without a memory budget
+   */
+  Interner interner;
+
+  /**
+   * The block caches as indexed by the interner; null if no interner
+   */
+  IdMap<Block> blocksById;
+  IdMap<IBlock> iBlocksById;
+  IdMap<Oblock> oBlocksById;
   
   Set<XBitSet> pmcCache;
   
@@ -52,12 +71,58 @@ public class IODecomposer {
   
   int targetWidth;
 
-  PMC solution;
+  volatile PMC solution;
   
   SafeSeparator ss;
 
+  SieveTrace sieveTrace;
+
+  /**
+   * The pool on which ready I-blocks are processed; null when
+   * decomposing on the calling thread only
+   */
+  ForkJoinPool pool;
+
+  /**
+   * The number of ready I-blocks taken into a wave, per worker thread
+   */
+  static final int WAVE_SIZE_PER_THREAD = 16;
+
+  /**
+   * The current wave of the parallel mode
+   */
+  int wave;
+
+  /**
+   * The O-blocks created or lowered in rank during the current wave
+   */
+  Queue<Oblock> freshOblocks;
+
+  /**
+   * Whether the O-blocks found for a target width are kept for the
+   * next target width rather than found again
+   */
+  boolean incremental;
+
+  /**
+   * The number of bytes the block caches may take on the heap before
+   * they spill to disk; 0 for no limit.  Only in the single-threaded mode.
+   */
+  long memoryBudget;
+
   static int TIMEOUT_CHECK = 100;
 
+  /**
+   * The scratch space for finding components, one per thread
+   */
+  ThreadLocal<ComponentScratch> componentScratch = 
+      new ThreadLocal<ComponentScratch>() {
+    @Override
+    protected ComponentScratch initialValue() {
+      return new ComponentScratch();
+    }
+  };
+
   public IODecomposer(Bag bag, 
       int lowerBound, int upperBound) {
 
@@ -68,17 +133,186 @@ public class IODecomposer {
     }
     this.lowerBound = lowerBound;
     this.upperBound = upperBound;
+    this.targetWidth = lowerBound;
     
     ss = new SafeSeparator(g);
   }
+
+  /**
+   * Makes the subsequent decompositions record their O-block sieve 
+   * traffic into the given trace
+   * @param sieveTrace the trace to record into; null to stop recording
+   */
+  public void setSieveTrace(SieveTrace sieveTrace) {
+    this.sieveTrace = sieveTrace;
+  }
+
+  /**
+   * Makes the subsequent decompositions process the ready I-blocks
+   * on the given pool
+   * @param pool the pool to use; null to process on the calling thread
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Makes the subsequent decompositions keep the O-blocks across
+   * target widths.  An O-block valid for one target width is valid for 
+   * any larger one, so when the target width is incremented, the
+   * O-blocks found so far are kept; when one of them is made again, 
+   * it is only put into the new sieve and crowned with the PMCs that 
+   * have become small enough.  Likewise, the PMCs formed by closed
+   * neighborhoods of vertices are only tried once.
+   * @param incremental true to keep the O-blocks across target widths
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * Bounds the heap taken by the block caches of the subsequent 
+   * single-threaded decompositions: past the budget, the least recently
+   * used blocks are spilled to a memory-mapped file
+   * @param memoryBudget the budget in bytes; 0 for no limit
+   */
+  public void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Returns the number of entries each of the three block caches
+   * may keep on the heap under the memory budget
+   */
+  int hotEntries() {
+    // a map entry with a key, and a block with three vertex sets
+    int setBytes = 40 + 8 * ((g.n + 63) / 64);
+    long entryBytes = 96 + 4 * setBytes;
+    return (int) Math.min(Integer.MAX_VALUE, memoryBudget / 3 / entryBytes);
+  }
+
+  Map<XBitSet, Block> newBlockCache() {
+    return new SpillingCache<>(g.n, hotEntries(), 
+        new SpillingCache.Codec<Block>() {
+      @Override
+      public long[] encode(Block block) {
+        return new long[0];
+      }
+
+      @Override
+      public Block decode(XBitSet component, long[] payload) {
+        return new Block(component);
+      }
+    });
+  }
+
+  Map<XBitSet, IBlock> newIBlockCache() {
+    return new SpillingCache<>(g.n, hotEntries(), 
+        new SpillingCache.Codec<IBlock>() {
+      @Override
+      public long[] encode(IBlock iBlock) {
+        return SpillingCache.pack(g.n, iBlock.endorser.vertexSet);
+      }
+
+      @Override
+      public IBlock decode(XBitSet component, long[] payload) {
+        PMC endorser = new PMC(SpillingCache.unpack(g.n, payload, 0));
+        return new IBlock(getBlock(component), endorser);
+      }
+    });
+  }
+
+  Map<XBitSet, Oblock> newOblockCache() {
+    return new SpillingCache<>(g.n, hotEntries(), 
+        new SpillingCache.Codec<Oblock>() {
+      @Override
+      public long[] encode(Oblock oBlock) {
+        long[] payload = SpillingCache.pack(g.n, oBlock.openComponent);
+        payload = Arrays.copyOf(payload, payload.length + 1);
+        payload[payload.length - 1] = 
+            (long) oBlock.sievedWidth << 32 | (oBlock.crownedWidth + 1);
+        return payload;
+      }
+
+      @Override
+      public Oblock decode(XBitSet separator, long[] payload) {
+        Oblock oBlock = new Oblock(separator, 
+            SpillingCache.unpack(g.n, payload, 0));
+        long widths = payload[payload.length - 1];
+        oBlock.sievedWidth = (int) (widths >>> 32);
+        oBlock.crownedWidth = (int) widths - 1;
+        return oBlock;
+      }
+    });
+  }
+
+  static SupersetDataStructure createSieve(int supersetDataStructureType, 
+      int n, int targetWidth) {
+    return supersetDataStructureType == 0 ? new LayeredSieve(n, targetWidth) :
+          supersetDataStructureType == 1 ? new NewTrie(n, targetWidth) :
+          supersetDataStructureType == 2 ? new NewTrieCompressed(n, targetWidth) :
+          supersetDataStructureType == 3 ? new SetTrie(n, targetWidth) :
+          supersetDataStructureType == 4 ? new NewTrieOptimised(n, targetWidth) :
+          supersetDataStructureType == 5 ? new ConcurrentTrie(n, targetWidth) :
+          supersetDataStructureType == 6 ? new NewTrieFlat(n, targetWidth) :
+          supersetDataStructureType == 7 ? new NewTrieFlat(n, targetWidth,
+              WordKernel.create(true)) :
+          supersetDataStructureType == -1 ? new NewTrieReordered(n, targetWidth) :
+          supersetDataStructureType == -2 ? new NewTrieCompressedReordered(n, targetWidth) :
+          null;
+  }
   
   public void decompose(int supersetDataStructureType) {
-    blockCache = new HashMap<>();
-    iBlockCache = new HashMap<>();
+    try {
+      decomposeByIncreasingWidth(supersetDataStructureType);
+    } finally {
+      close(blockCache);
+      close(iBlockCache);
+      close(oBlockCache);
+    }
+  }
+
+  /**
+   * Releases the file and the off-heap index of the given cache, if
+   * it spills
+   */
+  static void close(Map<XBitSet, ?> cache) {
+    if (cache instanceof SpillingCache) {
+      ((SpillingCache<?>) cache).close();
+    }
+  }
 
-    pendingEndorsers = new ArrayList<>();
+  void decomposeByIncreasingWidth(int supersetDataStructureType) {
+    interner = null;
+    blocksById = null;
+    iBlocksById = null;
+    oBlocksById = null;
+    if (pool == null && memoryBudget > 0) {
+      blockCache = newBlockCache();
+      iBlockCache = newIBlockCache();
+      pendingEndorsers = new ArrayList<>();
+    }
+    else if (pool == null) {
+      interner = new Interner();
+      blockCache = blocksById = new IdMap<>(interner);
+      iBlockCache = iBlocksById = new IdMap<>(interner);
+      pendingEndorsers = new ArrayList<>();
+    }
+    else {
+      blockCache = new ConcurrentHashMap<>();
+      iBlockCache = new ConcurrentHashMap<>();
+      pendingEndorsers = Collections.synchronizedList(new ArrayList<PMC>());
+      freshOblocks = new ConcurrentLinkedQueue<>();
+    }
     pmcCache = new HashSet<>();
+    oBlockCache = null;
+
+    if (sieveTrace != null) {
+      sieveTrace.startRun();
+    }
 
+    // the target width of the kept O-blocks; -1 if none kept
+    int keptWidth = -1;
 
     while (targetWidth <= upperBound) {
       if (VERBOSE) {
@@ -95,19 +329,45 @@ public class IODecomposer {
 
       // endorserMap = new HashMap<>();
 
-      oBlockSieve = supersetDataStructureType == 0 ? new LayeredSieve(g.n, targetWidth) :
-            supersetDataStructureType == 1 ? new NewTrie(g.n, targetWidth) :
-            supersetDataStructureType == 2 ? new NewTrieCompressed(g.n, targetWidth) :
-            supersetDataStructureType == 3 ? new SetTrie(g.n, targetWidth) :
-            supersetDataStructureType == 4 ? new NewTrieOptimised(g.n, targetWidth) :
-            supersetDataStructureType == -1 ? new NewTrieReordered(g.n, targetWidth) :
-            supersetDataStructureType == -2 ? new NewTrieCompressedReordered(g.n, targetWidth) :
-            null;
-      oBlockCache = new HashMap<>();
-
-      readyQueue = new LinkedList<>();
+      oBlockSieve = createSieve(supersetDataStructureType, g.n, targetWidth);
+      if (sieveTrace != null) {
+        oBlockSieve = new TracingSieve(oBlockSieve, 
+            sieveTrace.startSegment(g.n, targetWidth));
+      }
+      if (pool == null) {
+        if (keptWidth < 0) {
+          if (interner != null) {
+            oBlockCache = oBlocksById = new IdMap<>(interner);
+          }
+          else {
+            close(oBlockCache);
+            oBlockCache = newOblockCache();
+          }
+        }
+        readyQueue = new LinkedList<>();
+      }
+      else {
+        if (!(oBlockSieve instanceof ConcurrentTrie)) {
+          oBlockSieve = new SynchronizedSieve(oBlockSieve);
+        }
+        if (keptWidth < 0) {
+          oBlockCache = new ConcurrentHashMap<>();
+        }
+        readyQueue = new ConcurrentLinkedQueue<>();
+      }
 
-      readyQueue.addAll(iBlockCache.values());
+      if (iBlocksById != null) {
+        // the latest I-blocks first, as they tend to be the larger ones
+        for (int id = interner.size() - 1; id >= 0; id--) {
+          IBlock iBlock = iBlocksById.getById(id);
+          if (iBlock != null) {
+            readyQueue.add(iBlock);
+          }
+        }
+      }
+      else {
+        readyQueue.addAll(iBlockCache.values());
+      }
 
       for (int v = 0; v < g.n; v++) {
         XBitSet cnb = (XBitSet) g.neighborSet[v].clone();
@@ -117,12 +377,14 @@ public class IODecomposer {
           System.out.println(v + ":" + cnb.cardinality() + ", " + cnb);
         }
 
-        if (cnb.cardinality() > targetWidth + 1) {
+        if (cnb.cardinality() > targetWidth + 1 ||
+            cnb.cardinality() <= keptWidth + 1) {
+          // too large, or already tried for the kept width
           continue;
         }
 
         //      if (!pmcCache.contains(cnb)) {
-        PMC pmc = new PMC(cnb, getBlocks(cnb));
+        PMC pmc = new PMC(cnb, getBlocks(cnb, componentScratch.get().blocks));
         if (pmc.isValid) {
           //          pmcCache.add(cnb);
           if (pmc.isReady()) {
@@ -136,6 +398,15 @@ public class IODecomposer {
       }
 
       while (true) {
+        if (pool != null) {
+          processInWaves();
+          if (solution != null) {
+            log("solution found");
+            Bag bag = currentBag.addNestedBag(solution.vertexSet); 
+            solution.carryOutDecomposition(bag);
+            return;
+          }
+        }
         while (!readyQueue.isEmpty()) {
 
           IBlock ready = readyQueue.remove();
@@ -154,8 +425,9 @@ public class IODecomposer {
           log("queue empty");
         }
 
-        ArrayList<PMC> endorsers = pendingEndorsers;
-        pendingEndorsers = new ArrayList<PMC>();
+        List<PMC> endorsers = pendingEndorsers;
+        pendingEndorsers = pool == null ? new ArrayList<PMC>() :
+          Collections.synchronizedList(new ArrayList<PMC>());
         for (PMC endorser : endorsers) {
           endorser.process();
           if (solution != null) {
@@ -172,11 +444,154 @@ public class IODecomposer {
 
       log("failed");
 
+      if (incremental) {
+        keptWidth = targetWidth;
+      }
       targetWidth++;
     }
     return;
   }
 
+  /**
+   * Processes the ready queue on the pool, in waves of ready I-blocks
+   * that are processed concurrently.  Processing the I-blocks one by one
+   * guarantees that each I-block sees every O-block made from the 
+   * I-blocks processed before it, which is what makes the search complete.
+   * To keep that guarantee, the I-blocks of a wave are ranked by their
+   * position in the wave and only query for the O-blocks of earlier waves;
+   * afterwards, the O-blocks made in the wave are plugged with the I-blocks
+   * of higher rank, repeatedly until no more O-blocks are made.
+   * The first solution found ends the search.
+   */
+  void processInWaves() {
+    int waveSize = WAVE_SIZE_PER_THREAD * pool.getParallelism();
+    while (!readyQueue.isEmpty() && solution == null) {
+      wave++;
+      final ArrayList<IBlock> batch = new ArrayList<>();
+      IBlock ready;
+      while (batch.size() < waveSize &&
+          (ready = readyQueue.poll()) != null) {
+        ready.rank = batch.size();
+        batch.add(ready);
+      }
+      forEachInParallel(batch.size(), new IntConsumer() {
+        @Override
+        public void accept(int i) {
+          if (solution == null) {
+            batch.get(i).process();
+          }
+        }
+      });
+      while (!freshOblocks.isEmpty() && solution == null) {
+        final ArrayList<Oblock> fresh = new ArrayList<>();
+        Oblock oBlock;
+        while ((oBlock = freshOblocks.poll()) != null) {
+          fresh.add(oBlock);
+        }
+        forEachInParallel(batch.size(), new IntConsumer() {
+          @Override
+          public void accept(int i) {
+            IBlock iBlock = batch.get(i);
+            for (Oblock oBlock: fresh) {
+              if (solution != null) {
+                return;
+              }
+              if (oBlock.rank < iBlock.rank && 
+                  iBlock.block.component.isSubset(oBlock.openComponent)) {
+                oBlock.plugin(iBlock);
+              }
+            }
+          }
+        });
+      }
+      freshOblocks.clear();
+    }
+  }
+
+  void forEachInParallel(int size, IntConsumer action) {
+    pool.invoke(new RangeAction(0, size, action));
+  }
+
+  static class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    int from;
+    int to;
+    IntConsumer action;
+
+    RangeAction(int from, int to, IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        if (from < to) {
+          action.accept(from);
+        }
+        return;
+      }
+      int mid = (from + to) / 2;
+      invokeAll(new RangeAction(from, mid, action), 
+          new RangeAction(mid, to, action));
+    }
+  }
+
+  /**
+   * Registers the O-block with the given separator and open component,
+   * unless it already exists, in which case only its rank in the current
+   * wave is lowered to that of the I-block that made it.
+   */
+  void addOblock(XBitSet separator, XBitSet openComponent, IBlock maker) {
+    Oblock oBlock;
+    int id = -1;
+    if (interner != null) {
+      id = interner.intern(separator);
+      separator = interner.get(id);
+      oBlock = oBlocksById.getById(id);
+    }
+    else {
+      oBlock = oBlockCache.get(separator);
+    }
+    if (oBlock != null && oBlock.revive(maker.rank)) {
+      // kept from a smaller target width: made again, except that
+      // it is crowned only with the PMCs that were too large then
+      oBlockSieve.put(openComponent, separator);
+      if (pool != null) {
+        freshOblocks.add(oBlock);
+      }
+      oBlock.crown();
+    }
+    else if (oBlock == null) {
+      oBlock = new Oblock(separator, openComponent);
+      if (id >= 0) {
+        oBlocksById.putById(id, oBlock);
+      }
+      else if (pool == null) {
+        oBlockCache.put(separator, oBlock);
+      }
+      else {
+        oBlock.wave = wave;
+        oBlock.rank = maker.rank;
+        Oblock existing = oBlockCache.putIfAbsent(separator, oBlock);
+        if (existing != null) {
+          existing.lowerRank(maker.rank);
+          return;
+        }
+      }
+      oBlockSieve.put(openComponent, separator);
+      if (pool != null) {
+        freshOblocks.add(oBlock);
+      }
+      oBlock.crown();
+    }
+    else if (pool != null) {
+      oBlock.lowerRank(maker.rank);
+    }
+  }
+
   boolean crossesOrSubsumes(XBitSet separator1, XBitSet endorsed, XBitSet separator2) {
     ArrayList<XBitSet> components = g.getComponents(separator1);
     for (XBitSet compo: components) {
@@ -195,11 +610,31 @@ public class IODecomposer {
     return true;
   }
 
+  /**
+   * Returns the block of the given component, creating it if new;
+   * the given set is not kept and may be scratch space
+   */
   Block getBlock(XBitSet component) {
+    if (interner != null) {
+      int id = interner.find(component);
+      if (id < 0) {
+        id = interner.intern((XBitSet) component.clone());
+      }
+      Block block = blocksById.getById(id);
+      if (block == null) {
+        block = new Block(interner.get(id));
+        block.id = id;
+        blocksById.putById(id, block);
+      }
+      return block;
+    }
     Block block = blockCache.get(component);
     if (block == null) {
-      block = new Block(component);
-      blockCache.put(component, block);
+      block = new Block((XBitSet) component.clone());
+      Block existing = blockCache.putIfAbsent(block.component, block);
+      if (existing != null) {
+        block = existing;
+      }
     }
     return block;
   }
@@ -217,6 +652,13 @@ public class IODecomposer {
     return iBlockCache.get(component);
   }
 
+  IBlock getIBlock(Block block) {
+    if (block.id >= 0) {
+      return iBlocksById.getById(block.id);
+    }
+    return iBlockCache.get(block.component);
+  }
+
   boolean isFullComponent(XBitSet component, XBitSet sep) {
     for (int v = sep.nextSetBit(0); v >= 0; v = sep.nextSetBit(v + 1)) {
       if (component.isDisjoint(g.neighborSet[v])) {
@@ -226,62 +668,97 @@ public class IODecomposer {
     return true;
   }
 
-  ArrayList<Block> getBlocks(XBitSet separator) {
-    ArrayList<Block> result = new ArrayList<Block>();
-    XBitSet rest = g.all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-      XBitSet c = g.neighborSet[v].subtract(separator);
-      XBitSet toBeScanned = (XBitSet) c.clone();
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0; w = toBeScanned
-            .nextSetBit(w + 1)) {
-          c.or(g.neighborSet[w]);
+  /**
+   * Puts the blocks of the components of the graph minus the given
+   * separator into the given list, replacing its contents.  The 
+   * components are looked up in and added to the component cache of 
+   * the graph, if any, sharing the sets of the blocks.
+   * @return the given list
+   */
+  ArrayList<Block> getBlocks(XBitSet separator, ArrayList<Block> result) {
+    result.clear();
+    ComponentCache cache = g.getComponentCache();
+    if (cache != null) {
+      ComponentCache.Components cached = cache.get(separator);
+      if (cached != null) {
+        for (XBitSet c : cached.components) {
+          result.add(getBlock(c));
         }
-        c.andNot(separator);
-        toBeScanned = c.subtract(save);
+        return result;
       }
-
-      Block block = getBlock(c);
-      result.add(block);
-      rest.andNot(c);
+    }
+    ComponentScratch scratch = componentScratch.get();
+    ComponentFinder finder = scratch.blockFinder;
+    finder.start(separator, separator);
+    while (finder.next(scratch.component)) {
+      result.add(getBlock(scratch.component));
+    }
+    if (cache != null) {
+      XBitSet[] components = new XBitSet[result.size()];
+      boolean[] full = new boolean[components.length];
+      int nSep = separator.cardinality();
+      for (int i = 0; i < components.length; i++) {
+        Block block = result.get(i);
+        components[i] = block.component;
+        full[i] = block.separator.cardinality() == nSep;
+      }
+      cache.put(separator, new ComponentCache.Components(components, full));
     }
     return result;
   }
 
+  /**
+   * Scratch space for finding components.  The finder of the Block
+   * constructor is separate, since getBlocks may construct blocks
+   * while enumerating.
+   */
+  class ComponentScratch {
+    ComponentFinder blockFinder = new ComponentFinder(g);
+    ComponentFinder outboundFinder = new ComponentFinder(g);
+    XBitSet component = new XBitSet(g.n);
+    XBitSet found = new XBitSet(g.n);
+    XBitSet removed = new XBitSet(g.n);
+
+    /**
+     * The blocks of a separator, taken into a PMC before getBlocks is 
+     * called again
+     */
+    ArrayList<Block> blocks = new ArrayList<>();
+  }
+
   class Block implements Comparable<Block> {
     XBitSet component;
     XBitSet separator;
     XBitSet outbound;
 
+    /**
+     * The id of the component given by the interner; -1 if none
+     */
+    int id = -1;
+
     Block(XBitSet component) {
       this.component = component;
       this.separator = g.neighborSet(component);
+      if (interner != null) {
+        // shared with the O-block and other blocks of this separator
+        this.separator = interner.get(interner.intern(separator));
+      }
 
-      XBitSet rest = g.all.subtract(component);
-      rest.andNot(separator);
+      ComponentScratch scratch = componentScratch.get();
+      scratch.removed.setToUnion(component, separator);
+      ComponentFinder finder = scratch.outboundFinder;
+      finder.start(scratch.removed, separator);
 
       int minCompo = component.nextSetBit(0);
+      XBitSet c = scratch.found;
 
       // the scanning order ensures that the first full component
       // encountered is the outbound one
-      for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-        XBitSet c = (XBitSet) g.neighborSet[v].clone();
-        XBitSet toBeScanned = c.subtract(separator);
-        c.set(v);
-        while (!toBeScanned.isEmpty()) {
-          XBitSet save = (XBitSet) c.clone();
-          for (int w = toBeScanned.nextSetBit(0); w >= 0; 
-              w = toBeScanned.nextSetBit(w + 1)) {
-            c.or(g.neighborSet[w]);
-          }
-          toBeScanned = c.subtract(save).subtract(separator);
-        }
-        if (separator.isSubset(c)) {
+      while (finder.next(c)) {
+        if (finder.isFull()) {
           // full block other than "component" found
-          if (v < minCompo) {
-            outbound = c.subtract(separator);
+          if (c.nextSetBit(0) < minCompo) {
+            outbound = (XBitSet) c.clone();
           }
           else {
             // v > minCompo
@@ -289,7 +766,6 @@ public class IODecomposer {
           }
           return;
         }
-        rest.andNot(c);
       }
     }
 
@@ -307,7 +783,7 @@ public class IODecomposer {
         sb.append("o");
       } 
       else {
-        if (iBlockCache.get(component) != null) {
+        if (getIBlock(this) != null) {
           sb.append("f");
         } else {
           sb.append("i");
@@ -326,6 +802,7 @@ public class IODecomposer {
   class IBlock {
     Block block;
     PMC endorser;
+    int rank;
 
     IBlock(Block block, PMC endorser) {
       this.block = block;
@@ -350,6 +827,10 @@ public class IODecomposer {
 
       for (XBitSet tsep : oBlockSeparators) {
         Oblock oBlock = oBlockCache.get(tsep);
+        if (pool != null && oBlock.wave == wave) {
+          // left to the catch-up of the current wave
+          continue;
+        }
         oBlock.plugin(this);
       }
     }
@@ -360,13 +841,7 @@ public class IODecomposer {
         System.out.print("makeSimple: " + this);
       }
 
-      Oblock oBlock = oBlockCache.get(block.separator);
-      if (oBlock == null) {
-        oBlock = new Oblock(block.separator, block.outbound);
-        oBlockCache.put(block.separator, oBlock);
-        oBlockSieve.put(block.outbound, block.separator);
-        oBlock.crown();
-      }
+      addOblock(block.separator, block.outbound, this);
     }
 
     public String toString() {
@@ -381,10 +856,40 @@ public class IODecomposer {
   class Oblock {
     XBitSet separator;
     XBitSet openComponent;
+    int wave;
+    volatile int rank;
+
+    /**
+     * The target width of the sieve this O-block was last put into
+     */
+    int sievedWidth;
+
+    /**
+     * The target width for which this O-block was last crowned;
+     * -1 if not yet crowned
+     */
+    int crownedWidth = -1;
 
     Oblock(XBitSet separator, XBitSet openComponent) {
       this.separator = separator;
       this.openComponent = openComponent;
+      this.sievedWidth = targetWidth;
+    }
+
+    /**
+     * Marks this O-block, kept from a smaller target width, as made 
+     * again for the current target width by an I-block of the given
+     * rank
+     * @return false if it has already been made again
+     */
+    synchronized boolean revive(int rank) {
+      if (sievedWidth == targetWidth) {
+        return false;
+      }
+      sievedWidth = targetWidth;
+      this.wave = IODecomposer.this.wave;
+      this.rank = rank;
+      return true;
     }
 
     void plugin(IBlock iBlock) {
@@ -393,13 +898,22 @@ public class IODecomposer {
         System.out.println("  to " + this);
       }
 
+      if (separator.unionCardinality(iBlock.block.separator) >
+          targetWidth + 1) {
+        return;
+      }
+
       XBitSet newsep = separator.unionWith(iBlock.block.separator);
 
-      if (newsep.cardinality() > targetWidth + 1) {
+      Oblock known = pool == null ? oBlockCache.get(newsep) : null;
+      if (known != null && known.sievedWidth == targetWidth) {
+        // newsep has a full block and is either a minimal separator
+        // or the separator of a known O-block: nothing new to make
         return;
       }
 
-      ArrayList<Block> blockList = getBlocks(newsep);
+      ArrayList<Block> blockList = 
+          getBlocks(newsep, componentScratch.get().blocks);
 
       Block fullBlock = null;
       int nSep = newsep.cardinality();
@@ -433,13 +947,19 @@ public class IODecomposer {
         if (newsep.cardinality() > targetWidth) {
           return;
         }
-        Oblock oBlock = oBlockCache.get(newsep);
-        if (oBlock == null) {
-          oBlock = new Oblock(newsep, fullBlock.component);
-          oBlockCache.put(newsep, oBlock);
-          oBlockSieve.put(fullBlock.component, newsep);
-          oBlock.crown();
-        }
+        addOblock(newsep, fullBlock.component, iBlock);
+      }
+    }
+
+    /**
+     * Lowers the rank of this O-block, made in the current wave,
+     * so that it gets plugged with the I-blocks ranked after the
+     * given rank
+     */
+    synchronized void lowerRank(int newRank) {
+      if (wave == IODecomposer.this.wave && newRank < rank) {
+        rank = newRank;
+        freshOblocks.add(this);
       }
     }
 
@@ -450,9 +970,10 @@ public class IODecomposer {
           System.out.println("try crowing by " + v);
         }
 
-        XBitSet newsep = separator.unionWith(
-          g.neighborSet[v].intersectWith(openComponent));
-        if (newsep.cardinality() <= targetWidth + 1) {
+        XBitSet newsep = g.neighborSet[v].intersectWith(openComponent);
+        newsep.or(separator);
+        int size = newsep.cardinality();
+        if (size <= targetWidth + 1 && size > crownedWidth + 1) {
 
           if (DEBUG) {
             System.out.println("crowing by " + v + ":" + this);
@@ -471,6 +992,7 @@ public class IODecomposer {
           }
         }
       }
+      crownedWidth = targetWidth;
     }
 
     public String toString() {
@@ -489,7 +1011,7 @@ public class IODecomposer {
     boolean isValid;
 
     PMC(XBitSet vertexSet) {
-      this(vertexSet, getBlocks(vertexSet));
+      this(vertexSet, getBlocks(vertexSet, componentScratch.get().blocks));
     }
     
     PMC(XBitSet vertexSet, ArrayList<Block> blockList) {
@@ -562,7 +1084,7 @@ public class IODecomposer {
     
     boolean isReady() {
       for (int i = 0; i < inbounds.length; i++) {
-        if (iBlockCache.get(inbounds[i].component) == null) {
+        if (getIBlock(inbounds[i]) == null) {
           return false;
         }
       }
@@ -610,7 +1132,11 @@ public class IODecomposer {
         if (DEBUG) {
           System.out.println("solution found in endorse()");
         }
-        solution = this;
+        synchronized (IODecomposer.this) {
+          if (solution == null) {
+            solution = this;
+          }
+        }
         return;
       } 
       else {
@@ -629,10 +1155,15 @@ public class IODecomposer {
       // }
       //
 
-      if (iBlockCache.get(target) == null) {
+      if (getIBlock(target) == null) {
         Block block = getBlock(target);
         IBlock iBlock = new IBlock(block, this);
-        iBlockCache.put(target, iBlock);
+        if (block.id >= 0) {
+          iBlocksById.putById(block.id, iBlock);
+        }
+        else if (iBlockCache.putIfAbsent(block.component, iBlock) != null) {
+          return;
+        }
 
         if (DEBUG) {
           System.out.println("adding to ready queue" + iBlock);
@@ -650,7 +1181,7 @@ public class IODecomposer {
         if (DEBUG) {
           System.out.println("inbound  = " + inbound);
         }
-        IBlock iBlock = iBlockCache.get(inbound.component);
+        IBlock iBlock = getIBlock(inbound);
         if (iBlock == null) {
           System.out.println("inbound iBlock is null, block = " + inbound);
           continue;
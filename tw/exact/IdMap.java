@@ -0,0 +1,167 @@
+package tw.exact;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from vertex sets to values held in an array indexed by the ids
+ * given to the sets by an {@code Interner}, which may be shared by many
+ * such maps.  Putting a key interns it; code that knows the id of a key
+ * can get and put by id, without hashing.  Removal is not supported.
+ * Not thread-safe.
+ */
+public class IdMap<V> extends AbstractMap<XBitSet, V> {
+  Interner interner;
+  Object[] values = new Object[16];
+  int size;
+
+  public IdMap(Interner interner) {
+    this.interner = interner;
+  }
+
+  /**
+   * Returns the value for the set with the given id
+   * @param id the id given by the interner
+   * @return the value, or null if none
+   */
+  @SuppressWarnings("unchecked")
+  public V getById(int id) {
+    return id < values.length ? (V) values[id] : null;
+  }
+
+  /**
+   * Puts the value for the set with the given id
+   * @param id the id given by the interner
+   * @param value the value, not null
+   * @return the previous value, or null if none
+   */
+  @SuppressWarnings("unchecked")
+  public V putById(int id, V value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    if (id >= values.length) {
+      values = Arrays.copyOf(values, 
+          Math.max(2 * values.length, interner.size()));
+    }
+    V old = (V) values[id];
+    if (old == null) {
+      size++;
+    }
+    values[id] = value;
+    return old;
+  }
+
+  @Override
+  public V get(Object key) {
+    if (!(key instanceof XBitSet)) {
+      return null;
+    }
+    int id = interner.find((XBitSet) key);
+    return id < 0 ? null : getById(id);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(XBitSet key, V value) {
+    return putById(interner.intern(key), value);
+  }
+
+  @Override
+  public V putIfAbsent(XBitSet key, V value) {
+    int id = interner.intern(key);
+    V old = getById(id);
+    if (old == null) {
+      putById(id, value);
+    }
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  int nextId(int from) {
+    while (from < values.length && values[from] == null) {
+      from++;
+    }
+    return from;
+  }
+
+  @Override
+  public Set<Map.Entry<XBitSet, V>> entrySet() {
+    return new AbstractSet<Map.Entry<XBitSet, V>>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Map.Entry<XBitSet, V>> iterator() {
+        return new Iterator<Map.Entry<XBitSet, V>>() {
+          int id = nextId(0);
+
+          @Override
+          public boolean hasNext() {
+            return id < values.length;
+          }
+
+          @Override
+          public Map.Entry<XBitSet, V> next() {
+            if (id >= values.length) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<XBitSet, V> entry = new SimpleImmutableEntry<>(
+                interner.get(id), getById(id));
+            id = nextId(id + 1);
+            return entry;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<V> iterator() {
+        return new Iterator<V>() {
+          int id = nextId(0);
+
+          @Override
+          public boolean hasNext() {
+            return id < values.length;
+          }
+
+          @Override
+          public V next() {
+            if (id >= values.length) {
+              throw new NoSuchElementException();
+            }
+            V value = getById(id);
+            id = nextId(id + 1);
+            return value;
+          }
+        };
+      }
+    };
+  }
+}
@@ -0,0 +1,108 @@
+package tw.exact;
+
+import java.util.Arrays;
+
+/**
+ * Gives each distinct vertex set one canonical {@code XBitSet} instance
+ * and a dense id, in the order of first interning.  The first instance
+ * interned for a set becomes its canonical instance, so it must not be
+ * changed afterwards.  Not thread-safe.
+ */
+public class Interner {
+  /**
+   * The canonical instances by id
+   */
+  XBitSet[] sets = new XBitSet[16];
+  int size;
+
+  /**
+   * Open addressing slots holding id + 1; 0 for an empty slot
+   */
+  int[] slots = new int[32];
+
+  /**
+   * The hash of the set in each used slot
+   */
+  int[] hashes = new int[32];
+
+  /**
+   * Returns the id of the given set, interning it if it is new
+   * @param set the set
+   * @return the id of the set
+   */
+  public int intern(XBitSet set) {
+    int hash = set.hashCode();
+    int slot = slot(set, hash);
+    if (slots[slot] != 0) {
+      return slots[slot] - 1;
+    }
+    if (size == sets.length) {
+      sets = Arrays.copyOf(sets, 2 * size);
+    }
+    int id = size++;
+    sets[id] = set;
+    slots[slot] = id + 1;
+    hashes[slot] = hash;
+    if (2 * size > slots.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  /**
+   * Returns the id of the given set, or -1 if it has not been interned
+   * @param set the set
+   * @return the id of the set, or -1
+   */
+  public int find(XBitSet set) {
+    return slots[slot(set, set.hashCode())] - 1;
+  }
+
+  /**
+   * Returns the canonical instance of the set with the given id
+   * @param id the id
+   * @return the canonical instance
+   */
+  public XBitSet get(int id) {
+    return sets[id];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  int slot(XBitSet set, int hash) {
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return slot;
+      }
+      if (hashes[slot] == hash) {
+        XBitSet other = sets[entry - 1];
+        if (other == set || other.equals(set)) {
+          return slot;
+        }
+      }
+    }
+  }
+
+  void rehash() {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[2 * oldSlots.length];
+    hashes = new int[slots.length];
+    int mask = slots.length - 1;
+    for (int i = 0; i < oldSlots.length; i++) {
+      if (oldSlots[i] == 0) {
+        continue;
+      }
+      int slot = oldHashes[i] & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = oldSlots[i];
+      hashes[slot] = oldHashes[i];
+    }
+  }
+}
@@ -10,6 +10,7 @@ import java.io.File;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
@@ -17,7 +18,13 @@ import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainDecomposer {
   private static boolean VERBOSE = false;
@@ -27,6 +34,48 @@ public class MainDecomposer {
 
   private static long time0;
 
+  static SieveTrace sieveTrace;
+
+  /**
+   * The pool shared by the parallel parts of the decomposition;
+   * null when running single-threaded
+   */
+  static ForkJoinPool pool;
+
+  /**
+   * Whether the {@code IODecomposer}s keep their O-blocks across
+   * target widths
+   */
+  static boolean incremental;
+
+  /**
+   * The heap budget in bytes for the block caches of each
+   * {@code IODecomposer}; 0 for no limit
+   */
+  static long memoryBudget;
+
+  /**
+   * The heap budget in bytes for the component cache of the graph
+   * being decomposed, shared by the greedy decompositions, the safe
+   * separator tests and the packing
+   */
+  static final long GRAPH_COMPONENT_CACHE_BUDGET = 16L << 20;
+
+  /**
+   * The heap budget in bytes for the component cache of each bag 
+   * refined by an {@code IODecomposer}; 0 for no cache.  Off by 
+   * default, as the hit rate depends much on the instance: see the
+   * counters logged in the verbose mode.
+   */
+  static long componentCacheBudget;
+
+  /**
+   * The number of greedy decompositions with random tie breaking
+   * run in addition to the three plain ones, per thread of the pool;
+   * none when running single-threaded
+   */
+  static final int RANDOM_GREEDY_PER_THREAD = 1;
+
   public static TreeDecomposition decompose(Graph g, int supersetDataStructureType) {
     log("decompose n = " + g.n);
     if (g.n == 0) {
@@ -41,8 +90,16 @@ public class MainDecomposer {
       return decomposeConnected(g, supersetDataStructureType);
     }
     
+    // the largest first, as the most likely to raise the width
+    Collections.sort(components, new Comparator<XBitSet>() {
+      @Override
+      public int compare(XBitSet c1, XBitSet c2) {
+        return c2.cardinality() - c1.cardinality();
+      }
+    });
+
     int invs[][] = new int[nc][];
-    Graph graphs[] = new Graph[nc];
+    final Graph graphs[] = new Graph[nc];
     
     for (int i = 0; i < nc; i++) {
       XBitSet compo = components.get(i);
@@ -64,27 +121,81 @@ public class MainDecomposer {
       graphs[i].inheritEdges(g, conv, invs[i]);
     }
 
+    // the width of the decomposition is that of the widest component,
+    // so each component needs decomposing only to the largest width
+    // known
+    final AtomicInteger width = new AtomicInteger(0);
+
+    TreeDecomposition tds[] = new TreeDecomposition[nc];
+    if (pool == null || sieveTrace != null) {
+      for (int i = 0; i < nc; i++) {
+        tds[i] = decomposeConnected(graphs[i], supersetDataStructureType,
+            width);
+      }
+    }
+    else {
+      ArrayList<Callable<TreeDecomposition>> tasks = new ArrayList<>();
+      for (int i = 0; i < nc; i++) {
+        final Graph graph = graphs[i];
+        tasks.add(new Callable<TreeDecomposition>() {
+          @Override
+          public TreeDecomposition call() {
+            return decomposeConnected(graph, supersetDataStructureType,
+                width);
+          }
+        });
+      }
+      int i = 0;
+      for (Future<TreeDecomposition> future: pool.invokeAll(tasks)) {
+        try {
+          tds[i++] = future.get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
     TreeDecomposition td = new TreeDecomposition(0, 0, g);
     
     for (int i = 0; i < nc; i++) {
-      TreeDecomposition td1 = decomposeConnected(graphs[i], supersetDataStructureType);
-      if (td1 == null) {
+      if (tds[i] == null) {
         return null;
       }
-      td.combineWith(td1, invs[i], null);
+      td.combineWith(tds[i], invs[i], null);
     }
     return td;
   }
   
   public static TreeDecomposition decomposeConnected(Graph g, int supersetDataStructureType) {
+    return decomposeConnected(g, supersetDataStructureType, 
+        new AtomicInteger(0));
+  }
+
+  /**
+   * Decomposes the given connected graph, which is a component of a 
+   * graph whose width is known to be at least the given width.  The
+   * decomposition is of the smallest width not below that; the known 
+   * width is raised to the width of the decomposition.  
+   * @param g the connected graph
+   * @param supersetDataStructureType the type of the O-block sieve
+   * @param width the lowest possible width of the decomposition, 
+   * shared by the components
+   * @return the decomposition
+   */
+  static TreeDecomposition decomposeConnected(Graph g, 
+      int supersetDataStructureType, AtomicInteger width) {
     log("decomposeConnected: n = " + g.n);
 
-    if (g.n <= 2) {
+    if (g.n <= 2 || g.n - 1 <= width.get()) {
+      // no decomposition is wider than the single bag
       TreeDecomposition td = new TreeDecomposition(0, g.n - 1, g);
       td.addBag(g.all.toArray());
+      raise(width, g.n - 1);
       return td;
     }
     
+    g.setComponentCache(new ComponentCache(GRAPH_COMPONENT_CACHE_BUDGET));
+
     Bag best = null;
     
     GreedyDecomposer.Mode[] modes = 
@@ -94,56 +205,90 @@ public class MainDecomposer {
             GreedyDecomposer.Mode.degree
             };
     
-    for (GreedyDecomposer.Mode mode: modes) { 
-      Bag whole = new Bag(g); 
-
-      GreedyDecomposer mfd = new GreedyDecomposer(whole, mode);
-//      GreedyDecomposer mfd = new GreedyDecomposer(whole);
-
-      mfd.decompose();
-
-      log("greedy decomposition (" + mode + ") obtained with " +
-            whole.nestedBags.size() + " bags and width " + 
-            whole.width);
-
-      whole.detectSafeSeparators();
-
-      log(whole.countSafeSeparators() + " safe separators found ");
-
-      whole.validate();
-      
-      whole.pack();
-      
-      whole.validate();
-
-      log("the decomposition packed into " +
-            whole.nestedBags.size() + " bags, separatorWidth = " + 
-            whole.separatorWidth + ", max bag size = " + 
-            whole.maxNestedBagSize());
-
-      if (best == null ||
-          whole.maxNestedBagSize() < best.maxNestedBagSize()) {
-        best = whole;
+    if (pool == null) {
+      for (GreedyDecomposer.Mode mode: modes) { 
+        Bag whole = greedyDecompose(g, mode, null);
+        if (best == null ||
+            whole.maxNestedBagSize() < best.maxNestedBagSize()) {
+          best = whole;
+        }
+      }
+    }
+    else {
+      // the plain modes and then the random ones, all at once;
+      // the earliest of the best wins, as in the sequential order
+      ArrayList<Callable<Bag>> tasks = new ArrayList<>();
+      int nRandom = RANDOM_GREEDY_PER_THREAD * pool.getParallelism();
+      for (int i = 0; i < modes.length + nRandom; i++) {
+        final GreedyDecomposer.Mode mode = modes[i % modes.length];
+        final Random random = i < modes.length ? null : new Random(i);
+        tasks.add(new Callable<Bag>() {
+          @Override
+          public Bag call() {
+            return greedyDecompose(g, mode, random);
+          }
+        });
+      }
+      for (Future<Bag> future: pool.invokeAll(tasks)) {
+        Bag whole;
+        try {
+          whole = future.get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new RuntimeException(e);
+        }
+        if (best == null ||
+            whole.maxNestedBagSize() < best.maxNestedBagSize()) {
+          best = whole;
+        }
       }
     }
 //    best = whole;
    
     //    whole.dump();
 
-    int lowestPossible = best.separatorWidth;
-    
-    for (Bag bag: best.nestedBags) {
-      if (bag.getWidth() > lowestPossible) {
-        bag.makeRefinable();
-        IODecomposer mtd = new IODecomposer(bag, g.minDegree(), g.n - 1);
-        mtd.decompose(supersetDataStructureType);
-        int w = bag.getWidth();
-        if (w > lowestPossible) {
-          lowestPossible = w;
+    // the width of the decomposition is at least that of any refined
+    // bag, so each bag needs refining only to the largest width known
+    final AtomicInteger lowestPossible = width;
+    raise(lowestPossible, best.separatorWidth);
+
+    // the largest first, as the most likely to raise lowestPossible
+    ArrayList<Bag> bags = new ArrayList<>(best.nestedBags);
+    Collections.sort(bags, new Comparator<Bag>() {
+      @Override
+      public int compare(Bag b1, Bag b2) {
+        return b2.size - b1.size;
+      }
+    });
+
+    if (pool == null || sieveTrace != null) {
+      // a trace records one decomposition at a time
+      for (Bag bag: bags) {
+        refine(bag, g, lowestPossible, supersetDataStructureType);
+      }
+    }
+    else {
+      ArrayList<Callable<Void>> tasks = new ArrayList<>();
+      for (final Bag bag: bags) {
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            refine(bag, g, lowestPossible, supersetDataStructureType);
+            return null;
+          }
+        });
+      }
+      for (Future<Void> future: pool.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new RuntimeException(e);
         }
       }
     }
     
+    log(g.getComponentCache().toString());
+    g.setComponentCache(null);
+
     log("flattening");
     
     best.flatten();
@@ -156,26 +301,163 @@ public class MainDecomposer {
     return best.toTreeDecomposition();
   }
   
+  /**
+   * Refines the given nested bag of a decomposition of the given graph 
+   * by an {@code IODecomposer}, unless its width is already at most
+   * the lowest possible width of the decomposition, which is then 
+   * raised to the width of the refined bag.  The refinement starts from
+   * the lowest possible width known, or the minimum degree of the
+   * graph if larger, as a smaller width cannot lower that of the
+   * decomposition.
+   * @param bag the nested bag
+   * @param g the graph
+   * @param lowestPossible the lowest possible width of the decomposition
+   * @param supersetDataStructureType the type of the O-block sieve
+   */
+  static void refine(Bag bag, Graph g, AtomicInteger lowestPossible,
+      int supersetDataStructureType) {
+    int lowerBound = lowestPossible.get();
+    if (bag.getWidth() <= lowerBound) {
+      return;
+    }
+    bag.makeRefinable();
+    if (componentCacheBudget > 0) {
+      bag.graph.setComponentCache(
+          new ComponentCache(componentCacheBudget));
+    }
+    IODecomposer mtd = new IODecomposer(bag, 
+        Math.max(g.minDegree(), lowerBound), g.n - 1);
+    mtd.setSieveTrace(sieveTrace);
+    mtd.setPool(pool);
+    mtd.setIncremental(incremental);
+    mtd.setMemoryBudget(memoryBudget);
+    mtd.decompose(supersetDataStructureType);
+    if (componentCacheBudget > 0) {
+      log(bag.graph.getComponentCache().toString());
+      bag.graph.setComponentCache(null);
+    }
+    raise(lowestPossible, bag.getWidth());
+  }
+
+  /**
+   * Raises the given width to the given one, if smaller
+   */
+  static void raise(AtomicInteger width, int w) {
+    int current;
+    while ((current = width.get()) < w &&
+        !width.compareAndSet(current, w)) {
+    }
+  }
+
+  /**
+   * Decomposes the graph greedily in the given mode, then detects
+   * safe separators and packs the decomposition
+   * @param g the graph
+   * @param mode the greedy mode
+   * @param random the source of the tie breaking; null for none
+   * @return the bag of the whole graph, holding the packed bags
+   */
+  static Bag greedyDecompose(Graph g, GreedyDecomposer.Mode mode, 
+      Random random) {
+    Bag whole = new Bag(g); 
+
+    GreedyDecomposer mfd = new GreedyDecomposer(whole, mode, random);
+//    GreedyDecomposer mfd = new GreedyDecomposer(whole);
+
+    mfd.decompose();
+
+    log("greedy decomposition (" + mode + 
+          (random == null ? "" : ", random") + ") obtained with " +
+          whole.nestedBags.size() + " bags and width " + 
+          whole.width);
+
+    whole.detectSafeSeparators();
+
+    log(whole.countSafeSeparators() + " safe separators found ");
+
+    whole.validate();
+    
+    whole.pack();
+    
+    whole.validate();
+
+    log("the decomposition packed into " +
+          whole.nestedBags.size() + " bags, separatorWidth = " + 
+          whole.separatorWidth + ", max bag size = " + 
+          whole.maxNestedBagSize());
+
+    return whole;
+  }
+
   static void log(String message) {
     if (VERBOSE) {
       System.out.println(message);
     }
   }
 
+  static int supersetDataStructureType(String name) {
+    if (name.equals("new")) {
+        return 1;
+    } else if (name.equals("new2")) {
+        return 2;
+    } else if (name.equals("settrie")) {
+        return 3;
+    } else if (name.equals("new-optimised")) {
+        return 4;
+    } else if (name.equals("concurrent")) {
+        return 5;
+    } else if (name.equals("new-flat")) {
+        return 6;
+    } else if (name.equals("new-flat-vector")) {
+        return 7;
+    } else if (name.equals("new-reordered")) {
+        return -1;
+    } else if (name.equals("new2-reordered")) {
+        return -2;
+    }
+    return 0;
+  }
+
   public static void main(String[] args) {
-    int supersetDataStructureType = 0;
-    if (args[0].equals("new")) {
-        supersetDataStructureType = 1;
-    } else if (args[0].equals("new2")) {
-        supersetDataStructureType = 2;
-    } else if (args[0].equals("settrie")) {
-        supersetDataStructureType = 3;
-    } else if (args[0].equals("new-optimised")) {
-        supersetDataStructureType = 4;
-    } else if (args[0].equals("new-reordered")) {
-        supersetDataStructureType = -1;
-    } else if (args[0].equals("new2-reordered")) {
-        supersetDataStructureType = -2;
+    int supersetDataStructureType = supersetDataStructureType(args[0]);
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-t")) {
+        // record the O-block sieve traffic for SieveReplayer
+        try {
+          sieveTrace = new SieveTrace(new File(args[++i]));
+        } catch (IOException e) {
+          e.printStackTrace();
+          return;
+        }
+        final SieveTrace trace = sieveTrace;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          @Override
+          public void run() {
+            try {
+              trace.close();
+            } catch (IOException e) {
+              e.printStackTrace();
+            }
+          }
+        });
+      }
+      else if (args[i].equals("-p")) {
+        int parallelism = Integer.parseInt(args[++i]);
+        if (parallelism > 1) {
+          pool = new ForkJoinPool(parallelism);
+        }
+      }
+      else if (args[i].equals("-i")) {
+        incremental = true;
+      }
+      else if (args[i].equals("-m")) {
+        // the block cache budget in megabytes
+        memoryBudget = Long.parseLong(args[++i]) << 20;
+      }
+      else if (args[i].equals("-c")) {
+        // the component cache budget in megabytes; 0 for no cache
+        componentCacheBudget = Long.parseLong(args[++i]) << 20;
+      }
     }
     Graph g = Graph.readGraph(System.in);
     TreeDecomposition td = decompose(g, supersetDataStructureType);
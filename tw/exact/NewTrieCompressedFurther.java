@@ -58,7 +58,7 @@ class NewTrieCompressedFurther implements SupersetDataStructure {
 
         private void query(XBitSet queryS, XBitSet queryN, int k,
                 int budget, ArrayList<XBitSet> out_list) {
-            if (subtrieIntersectionOfNSets.subtract(queryN).cardinality() > k) {
+            if (subtrieIntersectionOfNSets.differenceCardinality(queryN) > k) {
                 return;
             }
             if (queryS.intersects(subtrieIntersectionOfNSets)) {
@@ -0,0 +1,296 @@
+package tw.exact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The trie of {@code NewTrie} with the nodes laid out in flat arrays
+ * instead of {@code TrieNode} objects.  A node is an index into parallel
+ * {@code int[]} arenas holding its key, the block of its children and its
+ * slot in the block of its parent.  The children of a node occupy a block
+ * of consecutive slots, and the union of S-sets and the intersection of
+ * N-sets of their subtries are stored side by side: word {@code i} of the
+ * child in slot {@code j} is at {@code i * capacity + j} of the block, so
+ * that a word of all the siblings is a run of consecutive longs.  A block
+ * that is full moves to twice its capacity at the end of the slot arenas.
+ * The S-sets stored at a node form a linked list in a third pair of
+ * arenas.  All arenas double when full, so a put allocates nothing in the
+ * common case.
+ *
+ * The tests on the packed summaries go through a {@code WordKernel}, which
+ * may be the Vector API one; the children of a node are tested as a batch,
+ * up to 64 at a time.
+ */
+class NewTrieFlat implements SupersetDataStructure {
+    private static final int NONE = -1;
+
+    private int targetWidth;
+    private int words;
+    private int size;
+    private WordKernel kernel;
+
+    // the current query, padded to words
+    private long[] queryS;
+    private long[] queryN;
+
+    // the summaries of the root, which has no parent block
+    private long[] rootUnionOfSSets;
+    private long[] rootIntersectionOfNSets;
+
+    // node arenas
+    private int nodeCount;
+    private int[] key;
+    private int[] block;
+    private int[] blockCapacity;
+    private int[] childCount;
+    private int[] slot;
+    private int[] firstSSet;
+    private XBitSet[] NSets;
+
+    // slot arenas, words longs per slot in the summary ones
+    private int slotCount;
+    private int[] slotNode;
+    private long[] unionOfSSets;
+    private long[] intersectionOfNSets;
+
+    // S-set arenas
+    private int sSetCount;
+    private int[] nextSSet;
+    private long[] sSets;
+
+    public NewTrieFlat(int n, int targetWidth) {
+        this(n, targetWidth, new WordKernel());
+    }
+
+    public NewTrieFlat(int n, int targetWidth, WordKernel kernel) {
+        this.targetWidth = targetWidth;
+        this.kernel = kernel;
+        words = Math.max(1, (n + 63) / 64);
+        queryS = new long[words];
+        queryN = new long[words];
+        rootUnionOfSSets = new long[words];
+        rootIntersectionOfNSets = new long[words];
+        for (int v = 0; v < n; v++) {
+            rootIntersectionOfNSets[v >> 6] |= 1L << v;
+        }
+        int capacity = 64;
+        key = new int[capacity];
+        block = new int[capacity];
+        blockCapacity = new int[capacity];
+        childCount = new int[capacity];
+        slot = new int[capacity];
+        firstSSet = new int[capacity];
+        NSets = new XBitSet[capacity];
+        slotNode = new int[capacity];
+        unionOfSSets = new long[capacity * words];
+        intersectionOfNSets = new long[capacity * words];
+        nextSSet = new int[capacity];
+        sSets = new long[capacity * words];
+
+        addNode(-1);
+    }
+
+    private int addNode(int k) {
+        if (nodeCount == key.length) {
+            int capacity = 2 * key.length;
+            key = Arrays.copyOf(key, capacity);
+            block = Arrays.copyOf(block, capacity);
+            blockCapacity = Arrays.copyOf(blockCapacity, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            slot = Arrays.copyOf(slot, capacity);
+            firstSSet = Arrays.copyOf(firstSSet, capacity);
+            NSets = Arrays.copyOf(NSets, capacity);
+        }
+        int node = nodeCount++;
+        key[node] = k;
+        block[node] = NONE;
+        blockCapacity[node] = 0;
+        childCount[node] = 0;
+        slot[node] = NONE;
+        firstSSet[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Returns the first of {@code count} fresh slots, whose summaries are
+     * empty
+     */
+    private int allocateSlots(int count) {
+        if (slotCount + count > slotNode.length) {
+            int capacity = slotNode.length;
+            while (slotCount + count > capacity) {
+                capacity *= 2;
+            }
+            slotNode = Arrays.copyOf(slotNode, capacity);
+            unionOfSSets = Arrays.copyOf(unionOfSSets, capacity * words);
+            intersectionOfNSets = Arrays.copyOf(intersectionOfNSets,
+                    capacity * words);
+        }
+        int first = slotCount;
+        slotCount += count;
+        return first;
+    }
+
+    /**
+     * Moves the block of the children of the given node to twice its
+     * capacity
+     */
+    private void growBlock(int node) {
+        int capacity = blockCapacity[node];
+        int newCapacity = Math.max(1, 2 * capacity);
+        int newBlock = allocateSlots(newCapacity);
+        int count = childCount[node];
+        if (count > 0) {
+            int from = block[node] * words;
+            int to = newBlock * words;
+            for (int i = 0; i < words; i++) {
+                System.arraycopy(unionOfSSets, from + i * capacity,
+                        unionOfSSets, to + i * newCapacity, count);
+                System.arraycopy(intersectionOfNSets, from + i * capacity,
+                        intersectionOfNSets, to + i * newCapacity, count);
+            }
+            System.arraycopy(slotNode, block[node], slotNode, newBlock,
+                    count);
+        }
+        block[node] = newBlock;
+        blockCapacity[node] = newCapacity;
+    }
+
+    private int getOrAddChildNode(int node, int k, long[] NSet) {
+        int first = block[node];
+        for (int j = 0; j < childCount[node]; j++) {
+            if (key[slotNode[first + j]] == k) {
+                return slotNode[first + j];
+            }
+        }
+        int child = addNode(k);
+        if (childCount[node] == blockCapacity[node]) {
+            growBlock(node);
+        }
+        int j = childCount[node]++;
+        slotNode[block[node] + j] = child;
+        slot[child] = j;
+        int base = block[node] * words + j;
+        int stride = blockCapacity[node];
+        for (int i = 0; i < words; i++) {
+            intersectionOfNSets[base + i * stride] =
+                    i < NSet.length ? NSet[i] : 0;
+        }
+        return child;
+    }
+
+    /**
+     * Merges an entry into the summaries of a child of the given parent
+     */
+    private void merge(int parent, int child, long[] SSet, long[] NSet) {
+        int base = block[parent] * words + slot[child];
+        int stride = blockCapacity[parent];
+        for (int i = 0; i < words; i++) {
+            unionOfSSets[base + i * stride] |= i < SSet.length ? SSet[i] : 0;
+            intersectionOfNSets[base + i * stride] &=
+                    i < NSet.length ? NSet[i] : 0;
+        }
+    }
+
+    private void addSSet(int node, long[] SSet) {
+        if (sSetCount == nextSSet.length) {
+            int capacity = 2 * nextSSet.length;
+            nextSSet = Arrays.copyOf(nextSSet, capacity);
+            sSets = Arrays.copyOf(sSets, capacity * words);
+        }
+        int s = sSetCount++;
+        System.arraycopy(SSet, 0, sSets, s * words,
+                Math.min(SSet.length, words));
+        nextSSet[s] = firstSSet[node];
+        firstSSet[node] = s;
+    }
+
+    public void put(XBitSet SSet, XBitSet NSet) {
+        long[] s = SSet.words;
+        long[] ns = NSet.words;
+        for (int i = 0; i < words; i++) {
+            rootUnionOfSSets[i] |= i < s.length ? s[i] : 0;
+            rootIntersectionOfNSets[i] &= i < ns.length ? ns[i] : 0;
+        }
+        int node = 0;
+        // iterate over elements of NSet
+        for (int i = NSet.nextSetBit(0); i >= 0; i = NSet.nextSetBit(i+1)) {
+            int child = getOrAddChildNode(node, i, ns);
+            merge(node, child, s, ns);
+            node = child;
+        }
+        if (NSets[node] == null) {
+            // the N-set of every entry ending here is the path to this node
+            NSets[node] = (XBitSet) NSet.clone();
+        }
+        addSSet(node, s);
+        ++size;
+    }
+
+    public void collectSuperblocks(XBitSet component, XBitSet neighbours,
+            ArrayList<XBitSet> list) {
+        int k = targetWidth + 1 - neighbours.cardinality();
+        if (k >= 0) {
+            pad(component, queryS);
+            pad(neighbours, queryN);
+            if (!kernel.differenceExceeds(rootIntersectionOfNSets, 0, queryN,
+                    0, words, k)
+                    && kernel.isSubset(queryS, 0, rootUnionOfSSets, 0,
+                    words)) {
+                query(0, k, k, list);
+            }
+        }
+    }
+
+    private void pad(XBitSet set, long[] padded) {
+        int n = Math.min(set.words.length, words);
+        System.arraycopy(set.words, 0, padded, 0, n);
+        Arrays.fill(padded, n, words, 0);
+    }
+
+    /**
+     * Collects the N-sets of the subtrie of the given node, which has
+     * passed the tests on its summaries
+     */
+    private void query(int node, int k, int budget,
+            ArrayList<XBitSet> out_list) {
+        for (int s = firstSSet[node]; s != NONE; s = nextSSet[s]) {
+            if (kernel.isSubset(queryS, 0, sSets, s * words, words)) {
+                out_list.add(NSets[node]);
+                break;
+            }
+        }
+        int first = block[node];
+        int capacity = blockCapacity[node];
+        for (int from = 0; from < childCount[node]; from += 64) {
+            int count = Math.min(64, childCount[node] - from);
+            long candidates = count == 64 ? -1L : (1L << count) - 1;
+            if (budget == 0) {
+                // only the children keyed by a neighbour are within budget
+                for (int j = 0; j < count; j++) {
+                    if (!contains(queryN, key[slotNode[first + from + j]])) {
+                        candidates &= ~(1L << j);
+                    }
+                }
+            }
+            long passed = kernel.filter(unionOfSSets, intersectionOfNSets,
+                    words, first * words + from, capacity, count, candidates,
+                    queryS, queryN, k);
+            for (; passed != 0; passed &= passed - 1) {
+                int child = slotNode[first + from
+                        + Long.numberOfTrailingZeros(passed)];
+                int newBudget = contains(queryN, key[child]) ?
+                        budget : budget - 1;
+                query(child, k, newBudget, out_list);
+            }
+        }
+    }
+
+    private static boolean contains(long[] set, int v) {
+        return (set[v >> 6] & (1L << v)) != 0;
+    }
+
+    public int[] getSizes() {
+        return new int[] {size};
+    }
+}
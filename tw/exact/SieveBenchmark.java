@@ -0,0 +1,184 @@
+package tw.exact;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Replays the O-block sieve traffic of real {@code IODecomposer} runs against
+ * each {@code SupersetDataStructure} implementation.  The traffic is captured
+ * by decomposing the given {@code .gr} instances once with the default sieve,
+ * or read from trace files recorded with {@code MainDecomposer -t}; every
+ * segment of the trace (one per target width of each run) is then replayed
+ * a number of times against a fresh sieve of every type, reporting the mean
+ * time and allocation per call together with a 99% confidence interval of
+ * the time.
+ *
+ * Usage: {@code SieveBenchmark [-w warmups] [-i iterations] [-t type,...]
+ * [-m minOps] instance.gr|file.trace ...}, where the types are named as in
+ * {@code MainDecomposer}.  All types share one JVM, so the JIT sees every
+ * implementation; restrict to a single type with {@code -t} when comparing
+ * numbers across separate invocations.
+ */
+class SieveBenchmark {
+    static final String[] TYPE_NAMES = { "blocksieve", "new", "new2",
+            "settrie", "new-optimised", "concurrent", "new-flat",
+            "new-flat-vector", "new-reordered", "new2-reordered" };
+
+    public static void main(String[] args) {
+        int warmups = 5;
+        int iterations = 10;
+        int minOps = 1;
+        String[] typeNames = TYPE_NAMES;
+        ArrayList<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-w")) {
+                warmups = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-i")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t")) {
+                typeNames = args[++i].split(",");
+            } else if (args[i].equals("-m")) {
+                minOps = Integer.parseInt(args[++i]);
+            } else {
+                files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("usage: SieveBenchmark [-w warmups] "
+                    + "[-i iterations] [-t type,...] [-m minOps] "
+                    + "instance.gr|file.trace ...");
+            System.exit(1);
+        }
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        System.out.printf("%-12s %4s %5s %4s %8s %8s %8s  %-15s %12s %10s %12s%n",
+                "instance", "run", "n", "w", "puts", "queries", "res/q",
+                "type", "ns/op", "+-99%", "bytes/op");
+
+        for (File file : files) {
+            String name = file.getName().replaceAll("\\.(gr|trace)$", "");
+            Totals totals = new Totals(typeNames.length);
+            if (file.getName().endsWith(".gr")) {
+                for (SieveTrace.Segment segment : capture(file).segments) {
+                    report(name, segment, typeNames, warmups, iterations,
+                            minOps, bean, totals);
+                }
+            } else {
+                try (SieveTrace.Reader reader = new SieveTrace.Reader(file)) {
+                    SieveTrace.Segment segment;
+                    while ((segment = reader.next()) != null) {
+                        report(name, segment, typeNames, warmups, iterations,
+                                minOps, bean, totals);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+            }
+            for (int t = 0; t < typeNames.length; t++) {
+                System.out.printf("%-12s %4s %5s %4s %8s %8d %8s  %-15s %12.1f%n",
+                        name, "all", "", "", "", totals.ops, "", typeNames[t],
+                        totals.ops == 0 ? 0.0 :
+                            (double) totals.nanos[t] / iterations / totals.ops);
+            }
+        }
+    }
+
+    static void report(String name, SieveTrace.Segment segment,
+            String[] typeNames, int warmups, int iterations, int minOps,
+            com.sun.management.ThreadMXBean bean, Totals totals) {
+        if (segment.opCount() < minOps) {
+            return;
+        }
+        totals.ops += segment.opCount();
+        for (int t = 0; t < typeNames.length; t++) {
+            int type = MainDecomposer.supersetDataStructureType(typeNames[t]);
+            Result result = measure(segment, type, warmups, iterations, bean);
+            totals.nanos[t] += result.totalNanos;
+            System.out.printf("%-12s %4d %5d %4d %8d %8d %8.2f  %-15s %12.1f %10.1f %12.1f%s%n",
+                    name, segment.run, segment.n, segment.targetWidth,
+                    segment.putCount, segment.queryCount,
+                    segment.queryCount == 0 ? 0.0 :
+                        (double) segment.resultCount / segment.queryCount,
+                    typeNames[t], result.meanNanosPerOp,
+                    result.confidenceNanosPerOp, result.bytesPerOp,
+                    result.mismatch ? "  MISMATCH" : "");
+        }
+    }
+
+    static SieveTrace capture(File file) {
+        Graph g = Graph.readGraph(file);
+        SieveTrace trace = new SieveTrace();
+        MainDecomposer.sieveTrace = trace;
+        try {
+            MainDecomposer.decompose(g, 0);
+        } finally {
+            MainDecomposer.sieveTrace = null;
+        }
+        return trace;
+    }
+
+    static Result measure(SieveTrace.Segment segment, int type,
+            int warmups, int iterations,
+            com.sun.management.ThreadMXBean bean) {
+        long threadId = Thread.currentThread().getId();
+        double[] nanosPerOp = new double[iterations];
+        long bytes = 0;
+        Result result = new Result();
+        ArrayList<XBitSet> list = new ArrayList<>();
+        for (int i = 0; i < warmups + iterations; i++) {
+            SieveTrace.Calls calls = segment.decode();
+            SupersetDataStructure sieve = IODecomposer.createSieve(type,
+                    segment.n, segment.targetWidth);
+            list.clear();
+            long allocated0 = bean.getThreadAllocatedBytes(threadId);
+            long time0 = System.nanoTime();
+            long results = calls.replay(sieve, list);
+            long time1 = System.nanoTime();
+            long allocated1 = bean.getThreadAllocatedBytes(threadId);
+            if (results != segment.resultCount) {
+                result.mismatch = true;
+            }
+            if (i >= warmups) {
+                nanosPerOp[i - warmups] = (double) (time1 - time0) / segment.opCount();
+                result.totalNanos += time1 - time0;
+                bytes += allocated1 - allocated0;
+            }
+        }
+
+        double sum = 0;
+        for (double x : nanosPerOp) {
+            sum += x;
+        }
+        double mean = sum / iterations;
+        double squares = 0;
+        for (double x : nanosPerOp) {
+            squares += (x - mean) * (x - mean);
+        }
+        double sd = iterations > 1 ? Math.sqrt(squares / (iterations - 1)) : 0;
+        result.meanNanosPerOp = mean;
+        result.confidenceNanosPerOp = 2.576 * sd / Math.sqrt(iterations);
+        result.bytesPerOp = (double) bytes / iterations / segment.opCount();
+        return result;
+    }
+
+    static class Totals {
+        long ops;
+        long[] nanos;
+
+        Totals(int types) {
+            nanos = new long[types];
+        }
+    }
+
+    static class Result {
+        double meanNanosPerOp;
+        double confidenceNanosPerOp;
+        double bytesPerOp;
+        long totalNanos;
+        boolean mismatch;
+    }
+}
@@ -0,0 +1,54 @@
+package tw.exact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Drives a {@code SupersetDataStructure} with the calls recorded in a sieve
+ * trace file, as written by {@code MainDecomposer -t}, without the graph or
+ * the decomposer.  Each segment is replayed once against a fresh sieve of
+ * the given type and the time spent in the sieve is reported per segment,
+ * together with a check that the queries return as many separators as they
+ * did in the recorded run.
+ *
+ * Usage: {@code SieveReplayer type file.trace}, where the type is named as
+ * in {@code MainDecomposer}.
+ */
+class SieveReplayer {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: SieveReplayer type file.trace");
+            System.exit(1);
+        }
+        int type = MainDecomposer.supersetDataStructureType(args[0]);
+        long totalNanos = 0;
+        long totalOps = 0;
+        int mismatches = 0;
+        ArrayList<XBitSet> list = new ArrayList<>();
+        try (SieveTrace.Reader reader = new SieveTrace.Reader(new File(args[1]))) {
+            SieveTrace.Segment segment;
+            while ((segment = reader.next()) != null) {
+                SieveTrace.Calls calls = segment.decode();
+                SupersetDataStructure sieve = IODecomposer.createSieve(type,
+                        segment.n, segment.targetWidth);
+                long time0 = System.nanoTime();
+                long results = calls.replay(sieve, list);
+                long nanos = System.nanoTime() - time0;
+                totalNanos += nanos;
+                totalOps += segment.opCount();
+                boolean mismatch = results != segment.resultCount;
+                if (mismatch) {
+                    mismatches++;
+                }
+                System.out.printf("run %d n %d width %d: %d puts, %d queries, "
+                        + "%d results, %.3f ms%s%n", segment.run, segment.n,
+                        segment.targetWidth, segment.putCount,
+                        segment.queryCount, results, nanos / 1e6,
+                        mismatch ? " (recorded " + segment.resultCount + ")" : "");
+            }
+        }
+        System.out.printf("total: %d ops, %.3f ms, %d mismatching segments%n",
+                totalOps, totalNanos / 1e6, mismatches);
+    }
+}
@@ -0,0 +1,367 @@
+package tw.exact;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A recording of the calls that {@code IODecomposer} makes to its O-block
+ * sieve.  A trace consists of runs, one for each {@code IODecomposer}, and
+ * each run is split into segments, one for each target width.  Within a
+ * segment every call is stored in long-array form: a header word holding
+ * the kind of the call and the number of results it produced, followed by
+ * the words of its two vertex sets.
+ *
+ * A trace either keeps its segments in memory or, when created on a file,
+ * streams every record to that file as it is made.  The file is a sequence
+ * of big-endian longs: a magic word, then the records, where a run is
+ * marked by a {@code RUN} header word and each target width by a
+ * {@code WIDTH} header word carrying the width, followed by one word
+ * holding the number of vertices.  Files are read back one segment at a
+ * time through a {@code Reader}.  Writing and closing are synchronized on
+ * the trace, so that a shutdown hook may close it while the solver is
+ * recording; the records made after closing are dropped.
+ */
+class SieveTrace implements Closeable {
+    static final int PUT = 0;
+    static final int QUERY = 1;
+    static final int RUN = 2;
+    static final int WIDTH = 3;
+
+    static final long MAGIC = 0x5357545241434531L;
+
+    ArrayList<Segment> segments = new ArrayList<>();
+    int runs;
+    DataOutputStream out;
+
+    /**
+     * Creates a trace that keeps its segments in memory.
+     */
+    SieveTrace() {
+    }
+
+    /**
+     * Creates a trace that writes its records to the given file.
+     * @param file the file to write
+     * @throws IOException if the file cannot be opened
+     */
+    SieveTrace(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16));
+        out.writeLong(MAGIC);
+    }
+
+    /**
+     * Marks the start of a new {@code IODecomposer} run.
+     */
+    synchronized void startRun() {
+        runs++;
+        write(header(RUN, 0));
+    }
+
+    /**
+     * Starts the segment for the given target width of the current run.
+     * @param n the number of vertices of the graph being decomposed
+     * @param targetWidth the target width of the sieve
+     * @return the segment to which the calls should be recorded
+     */
+    synchronized Segment startSegment(int n, int targetWidth) {
+        Segment segment = new Segment(runs - 1, n, targetWidth);
+        if (out == null) {
+            segments.add(segment);
+        } else {
+            segment.trace = this;
+            write(header(WIDTH, targetWidth));
+            write(n);
+        }
+        return segment;
+    }
+
+    private void write(long word) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeLong(word);
+        } catch (IOException e) {
+            throw new RuntimeException("writing sieve trace failed", e);
+        }
+    }
+
+    /**
+     * Writes a record of a call, unless the trace has been closed.
+     */
+    synchronized void write(int kind, XBitSet first, XBitSet second,
+            int results, int wordsPerSet) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeLong(header(kind, results));
+            write(first, wordsPerSet);
+            write(second, wordsPerSet);
+        } catch (IOException e) {
+            throw new RuntimeException("writing sieve trace failed", e);
+        }
+    }
+
+    private void write(XBitSet set, int wordsPerSet) throws IOException {
+        long[] words = set.toLongArray();
+        for (int w = 0; w < wordsPerSet; w++) {
+            out.writeLong(w < words.length ? words[w] : 0);
+        }
+    }
+
+    static long header(int kind, int payload) {
+        return ((long) kind << 32) | (payload & 0xffffffffL);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    static class Segment {
+        final int run;
+        final int n;
+        final int targetWidth;
+        final int wordsPerSet;
+        long[] data;
+        int length;
+        int putCount;
+        int queryCount;
+        long resultCount;
+        // the trace written to, if it is on a file
+        SieveTrace trace;
+
+        Segment(int run, int n, int targetWidth) {
+            this.run = run;
+            this.n = n;
+            this.targetWidth = targetWidth;
+            wordsPerSet = (n + 63) / 64;
+            data = new long[64];
+        }
+
+        int opCount() {
+            return putCount + queryCount;
+        }
+
+        void record(int kind, XBitSet first, XBitSet second, int results) {
+            if (kind == PUT) {
+                putCount++;
+            } else {
+                queryCount++;
+                resultCount += results;
+            }
+            if (trace != null) {
+                trace.write(kind, first, second, results, wordsPerSet);
+                return;
+            }
+            ensureCapacity(length + 1 + 2 * wordsPerSet);
+            data[length++] = header(kind, results);
+            append(first);
+            append(second);
+        }
+
+        private void append(XBitSet set) {
+            long[] words = set.toLongArray();
+            System.arraycopy(words, 0, data, length, words.length);
+            length += wordsPerSet;
+        }
+
+        /**
+         * Reads the records of this segment from the given stream, up to
+         * the next marker or the end of the stream.  A record cut short by
+         * the end of the stream, as left by a killed run, is dropped.
+         * @return the header word of the marker that ended the segment,
+         * or -1 at the end of the stream
+         */
+        private long readFrom(DataInputStream in) throws IOException {
+            while (true) {
+                long header;
+                try {
+                    header = in.readLong();
+                } catch (EOFException e) {
+                    return -1;
+                }
+                int kind = (int) (header >>> 32);
+                if (kind == RUN || kind == WIDTH) {
+                    return header;
+                }
+                if (kind != PUT && kind != QUERY) {
+                    throw new IOException("corrupt sieve trace");
+                }
+                ensureCapacity(length + 1 + 2 * wordsPerSet);
+                int start = length;
+                data[length++] = header;
+                try {
+                    for (int w = 0; w < 2 * wordsPerSet; w++) {
+                        data[length++] = in.readLong();
+                    }
+                } catch (EOFException e) {
+                    length = start;
+                    return -1;
+                }
+                if (kind == PUT) {
+                    putCount++;
+                } else {
+                    queryCount++;
+                    resultCount += (int) header;
+                }
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data,
+                        Math.max(capacity, data.length * 2));
+            }
+        }
+
+        /**
+         * Decodes the recorded calls into fresh vertex sets, so that
+         * replaying them does not allocate anything but what the sieve
+         * itself allocates.
+         * @return the decoded calls
+         */
+        Calls decode() {
+            Calls calls = new Calls(opCount());
+            int i = 0;
+            for (int pos = 0; pos < length; i++) {
+                calls.kinds[i] = (int) (data[pos] >>> 32);
+                calls.results[i] = (int) data[pos];
+                pos++;
+                calls.firsts[i] = decodeSet(pos);
+                pos += wordsPerSet;
+                calls.seconds[i] = decodeSet(pos);
+                pos += wordsPerSet;
+            }
+            return calls;
+        }
+
+        private XBitSet decodeSet(int pos) {
+            XBitSet set = new XBitSet(n);
+            for (int w = 0; w < wordsPerSet; w++) {
+                long word = data[pos + w];
+                while (word != 0) {
+                    set.set(w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return set;
+        }
+    }
+
+    /**
+     * The calls of a segment decoded into vertex sets, ready to be
+     * replayed against a {@code SupersetDataStructure}.
+     */
+    static class Calls {
+        final int[] kinds;
+        final int[] results;
+        final XBitSet[] firsts;
+        final XBitSet[] seconds;
+
+        Calls(int size) {
+            kinds = new int[size];
+            results = new int[size];
+            firsts = new XBitSet[size];
+            seconds = new XBitSet[size];
+        }
+
+        /**
+         * Replays the calls against the given sieve.
+         * @param sieve the sieve to drive
+         * @param list a scratch list for query results
+         * @return the total number of results returned by the queries
+         */
+        long replay(SupersetDataStructure sieve, ArrayList<XBitSet> list) {
+            long total = 0;
+            for (int i = 0; i < kinds.length; i++) {
+                if (kinds[i] == PUT) {
+                    sieve.put(firsts[i], seconds[i]);
+                } else {
+                    list.clear();
+                    sieve.collectSuperblocks(firsts[i], seconds[i], list);
+                    total += list.size();
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Reads a trace file written by a {@code SieveTrace} one segment at a
+     * time, so that traces much larger than the heap can be replayed.
+     */
+    static class Reader implements Closeable {
+        DataInputStream in;
+        long pending;
+        int run = -1;
+
+        Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16));
+            if (in.readLong() != MAGIC) {
+                in.close();
+                throw new IOException(file + " is not a sieve trace");
+            }
+            try {
+                pending = in.readLong();
+            } catch (EOFException e) {
+                // only the magic word: an empty trace
+                pending = -1;
+            }
+        }
+
+        /**
+         * Returns the next segment of the trace.
+         * @return the next segment; null at the end of the trace
+         * @throws IOException if the trace cannot be read
+         */
+        Segment next() throws IOException {
+            while (pending != -1 && (int) (pending >>> 32) == RUN) {
+                run++;
+                try {
+                    pending = in.readLong();
+                } catch (EOFException e) {
+                    pending = -1;
+                }
+            }
+            if (pending == -1) {
+                return null;
+            }
+            if ((int) (pending >>> 32) != WIDTH) {
+                throw new IOException("corrupt sieve trace");
+            }
+            int targetWidth = (int) pending;
+            int n;
+            try {
+                n = (int) in.readLong();
+            } catch (EOFException e) {
+                pending = -1;
+                return null;
+            }
+            Segment segment = new Segment(run, n, targetWidth);
+            pending = segment.readFrom(in);
+            return segment;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
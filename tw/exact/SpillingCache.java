@@ -0,0 +1,417 @@
+package tw.exact;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from vertex sets to blocks that keeps at most a given number of
+ * entries on the heap.  The entries are kept in the order of their last
+ * access; when there are too many, the least recently accessed one is
+ * encoded by the {@code Codec} and appended to a memory-mapped log file,
+ * and found again through an off-heap hash index keyed by the vertex set.
+ * Getting a spilled entry decodes it and brings it back to the heap.
+ *
+ * The log is append-only: an entry spilled again is appended anew and
+ * the index is pointed at the new record.  Since a decoded value is a new
+ * object, the values must be immutable or rebuilt consistently by the
+ * codec, and references to values must not be compared for identity
+ * across spills.  The log file is deleted as soon as it is opened, so
+ * that it goes away with the process however that ends; {@code close}
+ * releases it and empties the cache.  Not thread-safe.
+ */
+public class SpillingCache<V> extends AbstractMap<XBitSet, V>
+    implements Closeable {
+  /**
+   * Encodes values to words and decodes them back
+   */
+  public interface Codec<V> {
+    /**
+     * @return the words from which {@code decode} can rebuild the value
+     */
+    long[] encode(V value);
+
+    /**
+     * @return the value for the given key and encoded words
+     */
+    V decode(XBitSet key, long[] payload);
+  }
+
+  /**
+   * The number of longs in a segment of the log, which is mapped as a
+   * whole; records do not cross segments
+   */
+  static final int SEGMENT_LONGS = 1 << 23;
+
+  int words;
+  int maxHotEntries;
+  Codec<V> codec;
+
+  LinkedHashMap<XBitSet, V> hot;
+
+  File file;
+  RandomAccessFile raf;
+  ArrayList<LongBuffer> segments = new ArrayList<>();
+  long end;
+
+  /**
+   * The off-heap index, pairs of longs: the hash of the key in the
+   * lower half of the first and the log position plus one in the
+   * second; zero for an empty slot
+   */
+  LongBuffer index;
+  int indexCapacity;
+  int indexed;
+
+  /**
+   * The number of indexed keys that are also on the heap
+   */
+  int indexedAndHot;
+
+  /**
+   * Creates a cache for vertex sets of a graph with {@code n} vertices
+   * @param n the number of vertices
+   * @param maxHotEntries the number of entries kept on the heap
+   * @param codec the codec for the values
+   */
+  public SpillingCache(int n, int maxHotEntries, Codec<V> codec) {
+    this.words = (n + 63) / 64;
+    this.maxHotEntries = Math.max(1, maxHotEntries);
+    this.codec = codec;
+    hot = new LinkedHashMap<XBitSet, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<XBitSet, V> eldest) {
+        if (size() > SpillingCache.this.maxHotEntries) {
+          spill(eldest.getKey(), eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public V get(Object key) {
+    V value = hot.get(key);
+    if (value != null || indexed == 0 || !(key instanceof XBitSet)) {
+      return value;
+    }
+    long position = find((XBitSet) key);
+    if (position < 0) {
+      return null;
+    }
+    // the key of a lookup may be scratch space: keep a copy
+    XBitSet set = (XBitSet) ((XBitSet) key).clone();
+    value = read(set, position);
+    indexedAndHot++;
+    hot.put(set, value);
+    return value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(XBitSet key, V value) {
+    V old = hot.put(key, value);
+    if (old == null && indexed > 0 && find(key) >= 0) {
+      indexedAndHot++;
+    }
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return hot.size() + indexed - indexedAndHot;
+  }
+
+  @Override
+  public Set<Map.Entry<XBitSet, V>> entrySet() {
+    return new AbstractSet<Map.Entry<XBitSet, V>>() {
+      @Override
+      public int size() {
+        return SpillingCache.this.size();
+      }
+
+      @Override
+      public Iterator<Map.Entry<XBitSet, V>> iterator() {
+        return new EntryIterator();
+      }
+    };
+  }
+
+  /**
+   * Iterates over the entries on the heap and then over the spilled
+   * entries, decoding these without bringing them back to the heap
+   */
+  class EntryIterator implements Iterator<Map.Entry<XBitSet, V>> {
+    Iterator<Map.Entry<XBitSet, V>> hotIterator = hot.entrySet().iterator();
+    int slot = -1;
+    Map.Entry<XBitSet, V> next;
+
+    EntryIterator() {
+      advance();
+    }
+
+    void advance() {
+      if (hotIterator.hasNext()) {
+        next = hotIterator.next();
+        return;
+      }
+      next = null;
+      while (++slot < indexCapacity) {
+        long position = index.get(2 * slot + 1) - 1;
+        if (position < 0) {
+          continue;
+        }
+        XBitSet key = readKey(position);
+        if (!hot.containsKey(key)) {
+          next = new SimpleImmutableEntry<>(key, read(key, position));
+          return;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<XBitSet, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<XBitSet, V> result = next;
+      advance();
+      return result;
+    }
+  }
+
+  void spill(XBitSet key, V value) {
+    long[] payload = codec.encode(value);
+    int length = 1 + words + payload.length;
+    if (length > SEGMENT_LONGS) {
+      throw new RuntimeException("record too long: " + length);
+    }
+    if (segments.isEmpty() ||
+        (end % SEGMENT_LONGS) + length > SEGMENT_LONGS) {
+      end = (long) segments.size() * SEGMENT_LONGS;
+      map(segments.size());
+    }
+    long position = end;
+    LongBuffer segment = segments.get((int) (position / SEGMENT_LONGS));
+    int p = (int) (position % SEGMENT_LONGS);
+    segment.put(p++, payload.length);
+    long[] keyWords = key.words;
+    for (int i = 0; i < words; i++) {
+      segment.put(p++, i < keyWords.length ? keyWords[i] : 0);
+    }
+    for (long word : payload) {
+      segment.put(p++, word);
+    }
+    end += length;
+
+    int slot = slot(key);
+    if (index.get(2 * slot + 1) == 0) {
+      indexed++;
+      if (2 * indexed > indexCapacity) {
+        index.put(2 * slot, key.hashCode());
+        index.put(2 * slot + 1, position + 1);
+        rehash(2 * indexCapacity);
+        return;
+      }
+    }
+    else {
+      // this key was brought back to the heap and is leaving it again
+      indexedAndHot--;
+    }
+    index.put(2 * slot, key.hashCode());
+    index.put(2 * slot + 1, position + 1);
+  }
+
+  void map(int segment) {
+    try {
+      if (raf == null) {
+        file = File.createTempFile("tw-exact-spill", ".log");
+        raf = new RandomAccessFile(file, "rw");
+        // the open file and its mappings outlive the name
+        if (file.delete()) {
+          file = null;
+        }
+        else {
+          file.deleteOnExit();
+        }
+        rehash(1 << 16);
+      }
+      ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+          (long) segment * SEGMENT_LONGS * 8, (long) SEGMENT_LONGS * 8);
+      segments.add(buffer.order(ByteOrder.nativeOrder()).asLongBuffer());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Closes and deletes the log and drops the index and the entries;
+   * the mapped segments are unmapped when they are collected
+   */
+  @Override
+  public void close() {
+    hot.clear();
+    segments.clear();
+    end = 0;
+    index = null;
+    indexCapacity = 0;
+    indexed = 0;
+    indexedAndHot = 0;
+    try {
+      if (raf != null) {
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      raf = null;
+      if (file != null) {
+        file.delete();
+        file = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the slot of the index holding the given key, or the empty
+   * slot where it would be put
+   */
+  int slot(XBitSet key) {
+    int hash = key.hashCode();
+    int mask = indexCapacity - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      long position = index.get(2 * slot + 1) - 1;
+      if (position < 0) {
+        return slot;
+      }
+      if ((int) index.get(2 * slot) == hash && keyEquals(key, position)) {
+        return slot;
+      }
+    }
+  }
+
+  long find(XBitSet key) {
+    return index.get(2 * slot(key) + 1) - 1;
+  }
+
+  void rehash(int capacity) {
+    LongBuffer old = index;
+    int oldCapacity = indexCapacity;
+    index = ByteBuffer.allocateDirect(capacity * 16)
+        .order(ByteOrder.nativeOrder()).asLongBuffer();
+    indexCapacity = capacity;
+    int mask = capacity - 1;
+    for (int i = 0; i < oldCapacity; i++) {
+      long position = old.get(2 * i + 1);
+      if (position == 0) {
+        continue;
+      }
+      int hash = (int) old.get(2 * i);
+      int slot = mix(hash) & mask;
+      while (index.get(2 * slot + 1) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index.put(2 * slot, hash);
+      index.put(2 * slot + 1, position);
+    }
+  }
+
+  static int mix(int hash) {
+    return hash * 0x9E3779B9 >>> 7;
+  }
+
+  boolean keyEquals(XBitSet key, long position) {
+    LongBuffer segment = segments.get((int) (position / SEGMENT_LONGS));
+    int p = (int) (position % SEGMENT_LONGS) + 1;
+    long[] keyWords = key.words;
+    for (int i = 0; i < words; i++) {
+      long word = i < keyWords.length ? keyWords[i] : 0;
+      if (segment.get(p + i) != word) {
+        return false;
+      }
+    }
+    for (int i = words; i < keyWords.length; i++) {
+      if (keyWords[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  XBitSet readKey(long position) {
+    LongBuffer segment = segments.get((int) (position / SEGMENT_LONGS));
+    int p = (int) (position % SEGMENT_LONGS) + 1;
+    XBitSet key = new XBitSet(words * 64);
+    for (int i = 0; i < words; i++) {
+      setWord(key, i, segment.get(p + i));
+    }
+    return key;
+  }
+
+  V read(XBitSet key, long position) {
+    LongBuffer segment = segments.get((int) (position / SEGMENT_LONGS));
+    int p = (int) (position % SEGMENT_LONGS);
+    long[] payload = new long[(int) segment.get(p)];
+    p += 1 + words;
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = segment.get(p + i);
+    }
+    return codec.decode(key, payload);
+  }
+
+  /**
+   * Writes the given sets of at most {@code n} vertices into
+   * consecutive groups of {@code (n + 63) / 64} words of an array
+   */
+  static long[] pack(int n, XBitSet... sets) {
+    int words = (n + 63) / 64;
+    long[] result = new long[sets.length * words];
+    for (int s = 0; s < sets.length; s++) {
+      long[] setWords = sets[s].words;
+      System.arraycopy(setWords, 0, result, s * words,
+          Math.min(setWords.length, words));
+    }
+    return result;
+  }
+
+  /**
+   * Reads the {@code s}-th set written by {@code pack}
+   */
+  static XBitSet unpack(int n, long[] packed, int s) {
+    int words = (n + 63) / 64;
+    XBitSet set = new XBitSet(n);
+    for (int i = 0; i < words; i++) {
+      setWord(set, i, packed[s * words + i]);
+    }
+    return set;
+  }
+
+  static void setWord(XBitSet set, int i, long word) {
+    for (; word != 0; word &= word - 1) {
+      set.set(i * 64 + Long.numberOfTrailingZeros(word));
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package tw.exact;
+
+import java.util.ArrayList;
+
+/**
+ * A sieve that serializes all calls to another sieve, making any
+ * {@code SupersetDataStructure} safe to share between threads.
+ */
+class SynchronizedSieve implements SupersetDataStructure {
+    SupersetDataStructure sieve;
+
+    SynchronizedSieve(SupersetDataStructure sieve) {
+        this.sieve = sieve;
+    }
+
+    @Override
+    public synchronized void put(XBitSet SSet, XBitSet NSet) {
+        sieve.put(SSet, NSet);
+    }
+
+    @Override
+    public synchronized void collectSuperblocks(XBitSet component,
+            XBitSet neighbours, ArrayList<XBitSet> list) {
+        sieve.collectSuperblocks(component, neighbours, list);
+    }
+
+    @Override
+    public synchronized int[] getSizes() {
+        return sieve.getSizes();
+    }
+}
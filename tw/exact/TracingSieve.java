@@ -0,0 +1,37 @@
+package tw.exact;
+
+import java.util.ArrayList;
+
+/**
+ * A sieve that forwards every call to another sieve and records it
+ * in a {@code SieveTrace} segment.
+ */
+class TracingSieve implements SupersetDataStructure {
+    SupersetDataStructure sieve;
+    SieveTrace.Segment segment;
+
+    TracingSieve(SupersetDataStructure sieve, SieveTrace.Segment segment) {
+        this.sieve = sieve;
+        this.segment = segment;
+    }
+
+    @Override
+    public void put(XBitSet SSet, XBitSet NSet) {
+        segment.record(SieveTrace.PUT, SSet, NSet, 0);
+        sieve.put(SSet, NSet);
+    }
+
+    @Override
+    public void collectSuperblocks(XBitSet component, XBitSet neighbours,
+            ArrayList<XBitSet> list) {
+        int before = list.size();
+        sieve.collectSuperblocks(component, neighbours, list);
+        segment.record(SieveTrace.QUERY, component, neighbours,
+                list.size() - before);
+    }
+
+    @Override
+    public int[] getSizes() {
+        return sieve.getSizes();
+    }
+}
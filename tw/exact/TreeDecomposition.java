@@ -279,21 +279,10 @@ public class TreeDecomposition {
    * @param ps print stream
    */
   public void writeTo(PrintStream ps) {
-    ps.println("s td " + nb + " " + (width + 1) + " " + g.n);
-    for (int i = 1; i <= nb; i++) {
-      ps.print("b " + i);
-      for (int j = 0; j < bags[i].length; j++) {
-        ps.print(" " + (bags[i][j] + 1));
-      }
-      ps.println();
-    }
-    for (int i = 1; i <= nb; i++) {
-      for (int j = 0; j < degree[i]; j++) {
-        int h = neighbor[i][j];
-        if (i < h) {
-          ps.println(i + " " + h);
-        }
-      }
+    try {
+      new TdWriter(ps).write(this);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
   }
   
@@ -39,7 +39,7 @@ class TrieNode {
 
     void query(XBitSet queryS, XBitSet queryN, int k,
             int budget, ArrayList<XBitSet> out_list) {
-        if (subtrieIntersectionOfNSets.subtract(queryN).cardinality() > k) {
+        if (subtrieIntersectionOfNSets.differenceCardinality(queryN) > k) {
             return;
         }
         if (!queryS.isSubset(subtrieUnionOfSSets)) {
@@ -21,7 +21,7 @@ class TrieNodeOptimised {
     }
 
     void updateIntersectionOfNSets(XBitSet NSet) {
-        long[] NSetLongs = NSet.toLongArray();
+        long[] NSetLongs = NSet.words;
         int top = Math.min(NSetLongs.length, subtrieIntersectionOfNSetsLongs.length);
         for (int i=0; i<top; i++) {
             if (i == subtrieIntersectionOfNSetsLongs.length) {
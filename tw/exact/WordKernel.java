@@ -0,0 +1,117 @@
+package tw.exact;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Word-by-word tests on bit vectors stored as {@code words} consecutive
+ * longs of an array, as in the arenas of {@code NewTrieFlat}, and the
+ * tests of the summaries of a block of sibling trie nodes against a query.
+ * This class is the scalar implementation; {@code VectorWordKernel},
+ * compiled separately with {@code make vector}, evaluates the same tests
+ * with the incubating Vector API when that module is present at run time.
+ */
+class WordKernel {
+    private static Constructor<?> vectorConstructor;
+    private static boolean resolved;
+
+    /**
+     * Returns {@code true} if the vector at {@code aBase} of {@code a} is
+     * a subset of the vector at {@code bBase} of {@code b}.
+     */
+    boolean isSubset(long[] a, int aBase, long[] b, int bBase, int words) {
+        for (int i = 0; i < words; i++) {
+            if ((a[aBase + i] & ~b[bBase + i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if more than {@code k} members of the vector at
+     * {@code aBase} of {@code a} are missing from the vector at
+     * {@code bBase} of {@code b}.
+     */
+    boolean differenceExceeds(long[] a, int aBase, long[] b, int bBase,
+            int words, int k) {
+        int count = 0;
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(a[aBase + i] & ~b[bBase + i]);
+            if (count > k) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests the nodes of a block whose summaries are stored side by side,
+     * word {@code i} of slot {@code j} at {@code base + i * stride + j} of
+     * the arenas: a node passes if its union of S-sets contains
+     * {@code queryS} and at most {@code k} members of its intersection of
+     * N-sets are missing from {@code queryN}.  Only the slots in
+     * {@code candidates}, among the first {@code count} ones, {@code count}
+     * being at most 64, are tested.
+     * @return the mask of the candidates that pass, bit {@code j} standing
+     * for slot {@code j}
+     */
+    long filter(long[] unionOfSSets, long[] intersectionOfNSets, int words,
+            int base, int stride, int count, long candidates, long[] queryS,
+            long[] queryN, int k) {
+        long passed = 0;
+        for (long rest = candidates; rest != 0; rest &= rest - 1) {
+            int j = Long.numberOfTrailingZeros(rest);
+            if (passes(unionOfSSets, intersectionOfNSets, words, base + j,
+                    stride, queryS, queryN, k)) {
+                passed |= 1L << j;
+            }
+        }
+        return passed;
+    }
+
+    private static boolean passes(long[] unionOfSSets,
+            long[] intersectionOfNSets, int words, int base, int stride,
+            long[] queryS, long[] queryN, int k) {
+        int missing = 0;
+        for (int i = 0, p = base; i < words; i++, p += stride) {
+            missing += Long.bitCount(intersectionOfNSets[p] & ~queryN[i]);
+            if (missing > k) {
+                return false;
+            }
+        }
+        for (int i = 0, p = base; i < words; i++, p += stride) {
+            if ((queryS[i] & ~unionOfSSets[p]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a kernel using the Vector API if {@code vector} is true and
+     * both {@code VectorWordKernel} and the {@code jdk.incubator.vector}
+     * module are available, and the scalar kernel otherwise.
+     */
+    static synchronized WordKernel create(boolean vector) {
+        if (vector && !resolved) {
+            resolved = true;
+            try {
+                vectorConstructor = Class.forName("tw.exact.VectorWordKernel")
+                        .getDeclaredConstructor();
+                vectorConstructor.newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                vectorConstructor = null;
+                System.err.println("Vector API not available, "
+                        + "using the scalar kernel: " + e);
+            }
+        }
+        if (vector && vectorConstructor != null) {
+            try {
+                return (WordKernel) vectorConstructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new WordKernel();
+    }
+}
@@ -3,58 +3,85 @@
  */
 package tw.exact;
 
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Comparator;
 
 /**
- * This class extends {@code java.util.BitSet} which implements 
- * a variable length bit vector. 
- * The main purpose is to provide methods that create
- * a new vector as a result of a set operation such as 
- * union and intersection, rather than modifying the 
- * existing one.  See API documentation for {@code java.util.BitSet}.
+ * This class implements a set of non-negative integers, typically the
+ * vertices of a graph, as a bit vector held in a {@code long} array.
+ * The vector is created wide enough for the given number of vertices
+ * and only grows when a larger member is added, so the operations
+ * between sets of the same graph never reallocate.
+ * Besides the usual in-place operations of {@code java.util.BitSet},
+ * it provides methods that create a new vector as a result of a set
+ * operation such as union and intersection, methods that store such
+ * a result in an existing vector, and predicates such as
+ * {@link #isSubset(XBitSet)} that test without creating anything.
+ * The cardinality and the hash code are cached until the next change.
  *
  * @author  Hisao Tamaki
  */
 
-public class XBitSet extends BitSet 
-  implements Comparable<XBitSet>{
-  
+public class XBitSet implements Comparable<XBitSet>, Cloneable {
+
+  /**
+   * The words of the bit vector, bit {@code i} being bit
+   * {@code i % 64} of {@code words[i / 64]}.  The array may be longer
+   * than needed; the surplus words are zero.  Code outside this class
+   * may read but must not write the words.
+   */
+  long[] words;
+
+  /**
+   * The cached cardinality; -1 if not known
+   */
+  private int cardinality;
+
+  /**
+   * The cached hash code; 0 if not known, a code of 0 being kept as 1.
+   * As in {@code String}, the code is a single field, so a thread that
+   * reads it unsynchronized sees either 0 or the code
+   */
+  private int hash;
+
   /**
    * Creates an empty {@code XBitSet}.
    */
   public XBitSet() {
-    super();
+    this(64);
   }
 
   /**
    * Creates an empty {@code XBitSet} whose initial size is large enough to explicitly
    * contain members smaller than {@code n}.
    *
-   * @param  n the initial size of the {@code XBitSet} 
+   * @param  n the initial size of the {@code XBitSet}
    * @throws NegativeArraySizeException if the specified initial size
    *         is negative
    */
   public XBitSet(int n) {
-    super(n);
+    if (n < 0) {
+      throw new NegativeArraySizeException("n < 0: " + n);
+    }
+    words = new long[(n + 63) >>> 6];
   }
-  
+
   /**
    * Creates an {@code XBitSet} with members provided by an array
    *
    * @param  a an array of members to be in the {@code XBitSet}
    */
   public XBitSet(int a[]) {
-    super();
+    this();
     for (int i = 0; i < a.length; i++) {
       set(a[i]);
     }
-  }  
-  
+  }
+
   /**
    * Creates an {@code XBitSet} with members provided by an array.
    * The initial size is large enough to explicitly
-   * contain members smaller than {@code n}.  
+   * contain members smaller than {@code n}.
    *
    * @param  n the initial size of the {@code XBitSet}
    * @param  a an array of indices where the bits should be set
@@ -62,12 +89,379 @@ public class XBitSet extends BitSet
    *         is negative
    */
   public XBitSet(int n, int a[]) {
-    super(n);
+    this(n);
     for (int i = 0; i < a.length; i++) {
       set(a[i]);
     }
-  }  
-  
+  }
+
+  private void changed() {
+    cardinality = -1;
+    hash = 0;
+  }
+
+  private void ensureWords(int nWords) {
+    if (words.length < nWords) {
+      words = Arrays.copyOf(words, Math.max(nWords, 2 * words.length));
+    }
+  }
+
+  /**
+   * Returns the bit at the given index
+   * @param  i the index of the bit
+   * @return {@code true} if {@code i} is a member
+   */
+  public boolean get(int i) {
+    int w = i >>> 6;
+    return w < words.length && (words[w] & (1L << i)) != 0;
+  }
+
+  /**
+   * Adds {@code i} to this set
+   * @param  i the index of the bit to set
+   */
+  public void set(int i) {
+    if (i < 0) {
+      throw new IndexOutOfBoundsException("i < 0: " + i);
+    }
+    int w = i >>> 6;
+    ensureWords(w + 1);
+    words[w] |= 1L << i;
+    changed();
+  }
+
+  /**
+   * Sets the bit at the given index to the given value
+   * @param  i the index of the bit
+   * @param  value the new value of the bit
+   */
+  public void set(int i, boolean value) {
+    if (value) {
+      set(i);
+    }
+    else {
+      clear(i);
+    }
+  }
+
+  /**
+   * Adds the members from {@code from} (inclusive) to
+   * {@code to} (exclusive) to this set
+   * @param  from the first member to add
+   * @param  to one after the last member to add
+   */
+  public void set(int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    ensureWords(((to - 1) >>> 6) + 1);
+    for (int i = from; i < to; i++) {
+      words[i >>> 6] |= 1L << i;
+    }
+    changed();
+  }
+
+  /**
+   * Removes {@code i} from this set
+   * @param  i the index of the bit to clear
+   */
+  public void clear(int i) {
+    int w = i >>> 6;
+    if (w < words.length) {
+      words[w] &= ~(1L << i);
+      changed();
+    }
+  }
+
+  /**
+   * Removes all the members of this set
+   */
+  public void clear() {
+    Arrays.fill(words, 0);
+    changed();
+  }
+
+  /**
+   * Returns the smallest member that is not smaller than {@code from}
+   * @param  from the index from which to start
+   * @return the smallest member not smaller than {@code from};
+   * -1 if there is no such member
+   */
+  public int nextSetBit(int from) {
+    int w = from >>> 6;
+    if (w >= words.length) {
+      return -1;
+    }
+    long word = words[w] & (-1L << from);
+    while (true) {
+      if (word != 0) {
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++w == words.length) {
+        return -1;
+      }
+      word = words[w];
+    }
+  }
+
+  /**
+   * Returns the smallest non-member that is not smaller than {@code from}
+   * @param  from the index from which to start
+   * @return the smallest non-member not smaller than {@code from}
+   */
+  public int nextClearBit(int from) {
+    int w = from >>> 6;
+    if (w >= words.length) {
+      return from;
+    }
+    long word = ~words[w] & (-1L << from);
+    while (true) {
+      if (word != 0) {
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++w == words.length) {
+        return w << 6;
+      }
+      word = ~words[w];
+    }
+  }
+
+  /**
+   * Returns the number of members of this set
+   * @return the cardinality of this set
+   */
+  public int cardinality() {
+    if (cardinality < 0) {
+      int c = 0;
+      for (int i = 0; i < words.length; i++) {
+        c += Long.bitCount(words[i]);
+      }
+      cardinality = c;
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns {@code true} if this set has no member
+   * @return {@code true} if this set is empty
+   */
+  public boolean isEmpty() {
+    if (cardinality >= 0) {
+      return cardinality == 0;
+    }
+    for (int i = 0; i < words.length; i++) {
+      if (words[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the largest member plus one
+   * @return the largest member plus one; 0 if the set is empty
+   */
+  public int length() {
+    for (int i = words.length - 1; i >= 0; i--) {
+      if (words[i] != 0) {
+        return (i << 6) + 64 - Long.numberOfLeadingZeros(words[i]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the number of bits the vector can hold without growing
+   * @return the size of the vector in bits
+   */
+  public int size() {
+    return words.length << 6;
+  }
+
+  /**
+   * Adds the members of the argument {@code XBitSet} to this set
+   * @param  set an {@code XBitSet}
+   */
+  public void or(XBitSet set) {
+    long[] b = set.words;
+    int n = b.length;
+    while (n > words.length && b[n - 1] == 0) {
+      n--;
+    }
+    ensureWords(n);
+    for (int i = 0; i < n; i++) {
+      words[i] |= b[i];
+    }
+    changed();
+  }
+
+  /**
+   * Removes the members not in the argument {@code XBitSet} from this set
+   * @param  set an {@code XBitSet}
+   */
+  public void and(XBitSet set) {
+    long[] b = set.words;
+    int n = Math.min(words.length, b.length);
+    for (int i = 0; i < n; i++) {
+      words[i] &= b[i];
+    }
+    for (int i = n; i < words.length; i++) {
+      words[i] = 0;
+    }
+    changed();
+  }
+
+  /**
+   * Removes the members of the argument {@code XBitSet} from this set
+   * @param  set an {@code XBitSet}
+   */
+  public void andNot(XBitSet set) {
+    long[] b = set.words;
+    int n = Math.min(words.length, b.length);
+    for (int i = 0; i < n; i++) {
+      words[i] &= ~b[i];
+    }
+    changed();
+  }
+
+  /**
+   * Replaces this set by its symmetric difference with the
+   * argument {@code XBitSet}
+   * @param  set an {@code XBitSet}
+   */
+  public void xor(XBitSet set) {
+    long[] b = set.words;
+    ensureWords(b.length);
+    for (int i = 0; i < b.length; i++) {
+      words[i] ^= b[i];
+    }
+    changed();
+  }
+
+  /**
+   * Replaces the members of this set by those of the argument
+   * {@code XBitSet}
+   * @param  set an {@code XBitSet}
+   */
+  public void assign(XBitSet set) {
+    long[] b = set.words;
+    ensureWords(b.length);
+    System.arraycopy(b, 0, words, 0, b.length);
+    for (int i = b.length; i < words.length; i++) {
+      words[i] = 0;
+    }
+    cardinality = set.cardinality;
+    hash = set.hash;
+  }
+
+  /**
+   * Replaces the members of this set by those of the bit vector held
+   * in the first {@code nWords} words of the argument array
+   * @param  a the words
+   * @param  nWords the number of words
+   */
+  public void assign(long[] a, int nWords) {
+    ensureWords(nWords);
+    System.arraycopy(a, 0, words, 0, nWords);
+    for (int i = nWords; i < words.length; i++) {
+      words[i] = 0;
+    }
+    changed();
+  }
+
+  /**
+   * Replaces the members of this set by those of the union of
+   * the two argument {@code XBitSet}s
+   * @param  set1 an {@code XBitSet}
+   * @param  set2 an {@code XBitSet}
+   */
+  public void setToUnion(XBitSet set1, XBitSet set2) {
+    long[] a = set1.words;
+    long[] b = set2.words;
+    ensureWords(Math.max(a.length, b.length));
+    for (int i = 0; i < words.length; i++) {
+      words[i] = (i < a.length ? a[i] : 0) | (i < b.length ? b[i] : 0);
+    }
+    changed();
+  }
+
+  /**
+   * Replaces the members of this set by those of the intersection of
+   * the two argument {@code XBitSet}s
+   * @param  set1 an {@code XBitSet}
+   * @param  set2 an {@code XBitSet}
+   */
+  public void setToIntersection(XBitSet set1, XBitSet set2) {
+    long[] a = set1.words;
+    long[] b = set2.words;
+    for (int i = 0; i < words.length; i++) {
+      words[i] = i < a.length && i < b.length ? a[i] & b[i] : 0;
+    }
+    changed();
+  }
+
+  /**
+   * Replaces the members of this set by the members of
+   * the first argument {@code XBitSet} that are not in the second
+   * @param  set1 an {@code XBitSet}
+   * @param  set2 an {@code XBitSet}
+   */
+  public void setToDifference(XBitSet set1, XBitSet set2) {
+    long[] a = set1.words;
+    long[] b = set2.words;
+    ensureWords(a.length);
+    for (int i = 0; i < words.length; i++) {
+      words[i] = i < a.length ?
+          (i < b.length ? a[i] & ~b[i] : a[i]) : 0;
+    }
+    changed();
+  }
+
+  /**
+   * Returns the cardinality of the union of this target
+   * {@code XBitSet} and the argument {@code XBitSet}, without
+   * creating the union
+   * @param  set an {@code XBitSet}
+   * @return the cardinality of the union
+   */
+  public int unionCardinality(XBitSet set) {
+    long[] a = words;
+    long[] b = set.words;
+    int n = Math.min(a.length, b.length);
+    int c = 0;
+    for (int i = 0; i < n; i++) {
+      c += Long.bitCount(a[i] | b[i]);
+    }
+    for (int i = n; i < a.length; i++) {
+      c += Long.bitCount(a[i]);
+    }
+    for (int i = n; i < b.length; i++) {
+      c += Long.bitCount(b[i]);
+    }
+    return c;
+  }
+
+  /**
+   * Returns the number of members of this target {@code XBitSet}
+   * that are not in the argument {@code XBitSet}, without
+   * creating the difference
+   * @param  set an {@code XBitSet}
+   * @return the cardinality of the difference
+   */
+  public int differenceCardinality(XBitSet set) {
+    long[] a = words;
+    long[] b = set.words;
+    int n = Math.min(a.length, b.length);
+    int c = 0;
+    for (int i = 0; i < n; i++) {
+      c += Long.bitCount(a[i] & ~b[i]);
+    }
+    for (int i = n; i < a.length; i++) {
+      c += Long.bitCount(a[i]);
+    }
+    return c;
+  }
+
   /**
    * Returns {@code true} if this target {@code XBitSet} is a subset
    * of the argument {@code XBitSet}
@@ -77,9 +471,20 @@ public class XBitSet extends BitSet
    *         of the argument {@code XBitSet}
   */
   public boolean isSubset(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.andNot(set);
-    return tmp.isEmpty();
+    long[] a = words;
+    long[] b = set.words;
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if ((a[i] & ~b[i]) != 0) {
+        return false;
+      }
+    }
+    for (int i = n; i < a.length; i++) {
+      if (a[i] != 0) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -87,26 +492,32 @@ public class XBitSet extends BitSet
    * from the argument {@code XBitSet}
    *
    * @param  set an {@code XBitSet}
-   * @return boolean indicating whether this {@code XBitSet} is 
+   * @return boolean indicating whether this {@code XBitSet} is
    *  disjoint from the argument {@code XBitSet}
   */
   public boolean isDisjoint(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.and(set);
-    return tmp.isEmpty();
+    return !intersects(set);
   }
 
   /**
-   * Returns {@code true} if this target {@code XBitSet} has a 
+   * Returns {@code true} if this target {@code XBitSet} has a
    * non-empty intersection with the argument {@code XBitSet}
    *
    * @param  set an {@code XBitSet}
-   * @return boolean indicating whether this {@code XBitSet} 
+   * @return boolean indicating whether this {@code XBitSet}
    *  intersects with the argument {@code XBitSet}
   */
 
   public boolean intersects(XBitSet set) {
-    return super.intersects(set);
+    long[] a = words;
+    long[] b = set.words;
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if ((a[i] & b[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -118,11 +529,9 @@ public class XBitSet extends BitSet
    *  of the argument {@code XBitSet}
   */
   public boolean isSuperset(XBitSet set) {
-    BitSet tmp = (BitSet) set.clone();
-    tmp.andNot(this);
-    return tmp.isEmpty();
+    return set.isSubset(this);
   }
-  
+
   /**
    * Returns a {@code XBitSet} that is the union of this
    * target {@code XBitSet} and the argument {@code XBitSet}
@@ -131,8 +540,8 @@ public class XBitSet extends BitSet
    * @return the union {@code XBitSet}
   */
   public XBitSet unionWith(XBitSet set) {
-    XBitSet result = (XBitSet) this.clone();
-    result.or(set);
+    XBitSet result = new XBitSet(Math.max(words.length, set.words.length) << 6);
+    result.setToUnion(this, set);
     return result;
   }
 
@@ -144,8 +553,8 @@ public class XBitSet extends BitSet
    * @return the intersection {@code XBitSet}
   */
   public XBitSet intersectWith(XBitSet set) {
-    XBitSet result = (XBitSet) this.clone();
-    result.and(set);
+    XBitSet result = new XBitSet(words.length << 6);
+    result.setToIntersection(this, set);
     return result;
   }
 
@@ -157,20 +566,20 @@ public class XBitSet extends BitSet
    * @return the difference {@code XBitSet}
   */
   public XBitSet subtract(XBitSet set) {
-    XBitSet result = (XBitSet) this.clone();
-    result.andNot(set);
+    XBitSet result = new XBitSet(words.length << 6);
+    result.setToDifference(this, set);
     return result;
   }
-  
+
   /**
-   * Returns {@code true} if the target {@code XBitSet} has a member 
+   * Returns {@code true} if the target {@code XBitSet} has a member
    * that is smaller than the smallest member of the argument {@code XBitSet}.
    * Both the target and the argument {@code XBitSet} must be non-empty
    * to ensure a meaningful result.
    * @param  set an {@code XBitSet}
    * @return {@code true} if the target {@code XBitSet} has a member
    * smaller than the smallest member of the argument {@code XBitSet};
-   * {@code false} otherwise 
+   * {@code false} otherwise
   */
   public boolean hasSmaller(XBitSet set) {
     assert !isEmpty() && !set.isEmpty();
@@ -181,10 +590,10 @@ public class XBitSet extends BitSet
   /**
    * Compare the target {@code XBitSet} with the argument
    * {@code XBitSet}, where the bit vectors are viewed as
-   * binary representation of an integer, the bit {@code i} 
+   * binary representation of an integer, the bit {@code i}
    * set meaning that the number contains {@code 2^i}.
    * @return negative value if the target is smaller, positive if it is
-   * larger, and zero if it equals the argument  
+   * larger, and zero if it equals the argument
    */
   public int compareTo(XBitSet set) {
     int l1 = this.length();
@@ -192,9 +601,10 @@ public class XBitSet extends BitSet
     if (l1 != l2) {
       return l1 - l2;
     }
-    for (int i = l1 - 1; i >= 0; i--) {
-      if (this.get(i) && !set.get(i)) return 1;
-      else if (!this.get(i) && set.get(i)) return -1;
+    for (int i = (l1 - 1) >> 6; i >= 0; i--) {
+      if (words[i] != set.words[i]) {
+        return Long.compareUnsigned(words[i], set.words[i]);
+      }
     }
     return 0;
   }
@@ -212,12 +622,25 @@ public class XBitSet extends BitSet
     }
     return result;
   }
-  
+
+  /**
+   * Returns the words of the bit vector, without the trailing
+   * zero words, as in {@code java.util.BitSet}
+   * @return a new array holding the words
+   */
+  public long[] toLongArray() {
+    int n = words.length;
+    while (n > 0 && words[n - 1] == 0) {
+      n--;
+    }
+    return Arrays.copyOf(words, n);
+  }
+
   /**
    * Checks if this target bit set has an element
-   * that is smaller than every element in 
+   * that is smaller than every element in
    * the argument bit set
-   * @param vs bit set 
+   * @param vs bit set
    * @return {@code true} if this bit set has an element
    * smaller than every element in {@code vs}
    */
@@ -227,56 +650,136 @@ public class XBitSet extends BitSet
     else return nextSetBit(0) < vs.nextSetBit(0);
   }
 
+  @Override
+  public Object clone() {
+    try {
+      XBitSet result = (XBitSet) super.clone();
+      result.words = words.clone();
+      return result;
+    } catch (CloneNotSupportedException e) {
+      throw new InternalError(e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof XBitSet)) {
+      return false;
+    }
+    XBitSet set = (XBitSet) obj;
+    int h1 = hash;
+    int h2 = set.hash;
+    if (h1 != 0 && h2 != 0 && h1 != h2) {
+      return false;
+    }
+    long[] a = words;
+    long[] b = set.words;
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    for (int i = n; i < a.length; i++) {
+      if (a[i] != 0) {
+        return false;
+      }
+    }
+    for (int i = n; i < b.length; i++) {
+      if (b[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the hash code of this set.  Unlike that of
+   * {@code java.util.BitSet}, which folds the words by exclusive or
+   * and so gives the same code to many sets of a graph, it mixes
+   * each word into the code.
+   * @return the hash code
+   */
+  @Override
+  public int hashCode() {
+    int code = hash;
+    if (code == 0) {
+      int n = words.length;
+      while (n > 0 && words[n - 1] == 0) {
+        n--;
+      }
+      long h = 0;
+      for (int i = 0; i < n; i++) {
+        h = (h + words[i]) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+      }
+      h *= 0xBF58476D1CE4E5B9L;
+      code = (int) (h ^ (h >>> 32));
+      if (code == 0) {
+        code = 1;
+      }
+      hash = code;
+    }
+    return code;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(i);
+    }
+    sb.append("}");
+    return sb.toString();
+  }
+
   /**
    * holds the reference to an instance of the {@code DescendingComparator}
-   * for {@code BitSet}
+   * for {@code XBitSet}
    */
-  public static final Comparator<BitSet> descendingComparator =
+  public static final Comparator<XBitSet> descendingComparator =
       new DescendingComparator();
 
   /**
    * holds the reference to an instance of the {@code AscendingComparator}
-   * for {@code BitSet}
+   * for {@code XBitSet}
    */
-  public static final Comparator<BitSet> ascendingComparator =
+  public static final Comparator<XBitSet> ascendingComparator =
       new AscendingComparator();
-  
+
   /**
    * holds the reference to an instance of the {@code CardinalityComparator}
-   * for {@code BitSet}
+   * for {@code XBitSet}
    */
-  public static final Comparator<BitSet> cardinalityComparator =
+  public static final Comparator<XBitSet> cardinalityComparator =
       new CardinalityComparator();
-  
+
   /**
-   * A comparator for {@code BitSet}. The {@code compare}
-   * method compares the two vectors in the lexicographic order 
-   * where the highest bit is the most significant. 
+   * A comparator for {@code XBitSet}. The {@code compare}
+   * method compares the two vectors in the lexicographic order
+   * where the highest bit is the most significant.
    */
-  public static class DescendingComparator implements Comparator<BitSet> {
+  public static class DescendingComparator implements Comparator<XBitSet> {
     @Override
-    public int compare(BitSet s1, BitSet s2) {
-      int l1 = s1.length();
-      int l2 = s2.length();
-      if (l1 != l2) {
-        return l1 - l2;
-      }
-      for (int i = l1 - 1; i >= 0; i--) {
-        if (s1.get(i) && !s2.get(i)) return 1;
-        else if (!s1.get(i) && s2.get(i)) return -1;
-      }
-      return 0;
+    public int compare(XBitSet s1, XBitSet s2) {
+      return s1.compareTo(s2);
     }
   }
 
   /**
-   * A comparator for {@code BitSet}. The {@code compare} method compares
+   * A comparator for {@code XBitSet}. The {@code compare} method compares
    * the two vectors in the lexicographic order where the
-   * lowest bit is the most significant. 
+   * lowest bit is the most significant.
    */
-  public static class AscendingComparator implements Comparator<BitSet> {
+  public static class AscendingComparator implements Comparator<XBitSet> {
     @Override
-    public int compare(BitSet s1, BitSet s2) {
+    public int compare(XBitSet s1, XBitSet s2) {
       int l1 = s1.length();
       int l2 = s2.length();
 
@@ -287,21 +790,21 @@ public class XBitSet extends BitSet
       return l1 - l2;
     }
   }
-  
+
   /**
-   * A comparator for {@code BitSet}. The {@code compare} method compares
+   * A comparator for {@code XBitSet}. The {@code compare} method compares
    * the two sets in terms of the cardinality. In case of
-   * a tie, the two sets are compared by the {@code AscendingComparator} 
+   * a tie, the two sets are compared by the {@code AscendingComparator}
    */
-  public static class CardinalityComparator implements Comparator<BitSet> {
+  public static class CardinalityComparator implements Comparator<XBitSet> {
     @Override
-    public int compare(BitSet s1, BitSet s2) {
+    public int compare(XBitSet s1, XBitSet s2) {
       int c1 = s1.cardinality();
       int c2 = s2.cardinality();
       if (c1 != c2) {
         return c1 - c2;
       }
-      else 
+      else
         return ascendingComparator.compare(s1, s2);
     }
   }
@@ -25,6 +25,19 @@ public class Bag implements Cloneable{
   int inheritedLowerBound;
   boolean optimal; 
 
+  /*
+   * the local graph made last and its number of changes, and
+   * what it was made from: the graph of the parent and its
+   * number of changes, the vertex set, and the vertex sets of
+   * the incident separators filled in
+   */
+  Graph localGraph;
+  Graph localGraphSource;
+  int localGraphSourceModCount;
+  VertexSet localGraphVertexSet;
+  VertexSet[] localGraphFills;
+  int localGraphModCount;
+
   static final boolean DEBUG = false;
 
   public Bag(Graph graph) {
@@ -93,7 +106,20 @@ public class Bag implements Cloneable{
     incidentSeparators.add(separator);
   }
 
+  /**
+   * Makes the local graph of this bag from the graph of the
+   * parent, unless the one made last is still up to date:
+   * the same graph, unchanged, made from the same graph of the
+   * parent, unchanged, with the same vertex set and incident
+   * separators.  A bag keeps its local graph when the bags
+   * around it are replaced, so only the bags in a replaced
+   * subtree get new ones.
+   */
   public void makeLocalGraph() {
+    if (hasLocalGraph()) {
+      return;
+    }
+
     graph = new Graph(size);
     conv = new int[parent.size];
     inv = new int[size];
@@ -118,6 +144,34 @@ public class Bag implements Cloneable{
       //      System.out.println("filling " + separator);
       graph.fill(convert(separator.vertexSet, conv));
     }
+
+    localGraphSource = parent.graph;
+    localGraphSourceModCount = parent.graph.modCount;
+    localGraphVertexSet = vertexSet;
+    localGraphFills = new VertexSet[incidentSeparators.size()];
+    for (int i = 0; i < localGraphFills.length; i++) {
+      localGraphFills[i] = incidentSeparators.get(i).vertexSet.clone();
+    }
+    localGraph = graph;
+    localGraphModCount = graph.modCount;
+  }
+
+  private boolean hasLocalGraph() {
+    if (graph == null || graph != localGraph || 
+        localGraphSource != parent.graph ||
+        localGraphSourceModCount != parent.graph.modCount ||
+        localGraphVertexSet != vertexSet ||
+        localGraphModCount != graph.modCount ||
+        conv == null || conv.length != parent.size ||
+        localGraphFills.length != incidentSeparators.size()) {
+      return false;
+    }
+    for (int i = 0; i < localGraphFills.length; i++) {
+      if (!localGraphFills[i].equals(incidentSeparators.get(i).vertexSet)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public int getWidth() {
@@ -544,15 +598,9 @@ public class Bag implements Cloneable{
   @Override
     public Bag clone(){
       try{
+        // conv and inv are shared, as they are replaced, never changed
         Bag result = (Bag)super.clone();
 
-        if(conv != null){
-          result.conv = Arrays.copyOf(conv, conv.length);
-        }
-        if(inv != null){
-          result.inv = Arrays.copyOf(inv, inv.length);
-        }
-
         Map< Bag, Bag > newBagOf = new HashMap< >();
         if(nestedBags != null){
           result.nestedBags = new ArrayList< >(nestedBags.size());
@@ -14,11 +14,11 @@ public class CutDecomposer{
   public static final int ONET = 400000;
   public static final int STEP = 1000;
   public static final long DEFAULTMAXSTEP = 500000;
-  public static int now;
-  public static int cu;
-  public static int compSize;
-  public static long count;
-  public static boolean abort;
+  public int now;
+  public int cu;
+  public int compSize;
+  public long count;
+  public boolean abort;
   private Bag whole;
 
   private static final boolean DEBUG = false;
@@ -0,0 +1,247 @@
+package tw.heuristic;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A reader of graphs in the PACE {@code gr} format that scans the
+ * bytes of the input without making strings.  A file, or the standard
+ * input redirected from a file, is memory-mapped; other inputs are
+ * read into a direct buffer.  The edges are scanned twice: once to
+ * count the degrees and once to fill the adjacency lists, which are
+ * kept in compressed sparse row form: the neighbors of {@code v} are
+ * {@code adjacency[offsets[v]]} to {@code adjacency[offsets[v + 1] - 1]},
+ * in the order of their first edges in the input, without duplicates.
+ * The vertex numbers 1~n of the file are converted to 0~n-1.
+ */
+public class GrReader {
+  ByteBuffer in;
+  int position;
+  int limit;
+
+  /**
+   * The number of vertices
+   */
+  public int n;
+
+  /**
+   * The start of the neighbors of each vertex in {@code adjacency},
+   * and their end at index {@code n}
+   */
+  public int[] offsets;
+
+  /**
+   * The neighbors of the vertices, vertex after vertex
+   */
+  public int[] adjacency;
+
+  /**
+   * Reads a graph from the given buffer, from its position to its
+   * limit
+   * @param in the buffer
+   */
+  public GrReader(ByteBuffer in) {
+    this.in = in;
+    position = in.position();
+    limit = in.limit();
+    read();
+  }
+
+  public GrReader(File file) throws IOException {
+    this(map(file));
+  }
+
+  public GrReader(InputStream is) throws IOException {
+    this(readFully(is));
+  }
+
+  static ByteBuffer map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Returns the rest of the given stream, mapped if it is the
+   * standard input or a file input stream on a regular file, and
+   * read into a direct buffer otherwise
+   */
+  static ByteBuffer readFully(InputStream is) throws IOException {
+    if (is == System.in) {
+      // nothing is read through System.in, so its buffer is empty
+      is = new FileInputStream(FileDescriptor.in);
+    }
+    if (is instanceof FileInputStream) {
+      FileChannel channel = ((FileInputStream) is).getChannel();
+      // the size of a pipe is 0
+      long size = channel.size();
+      if (size > 0 && size <= Integer.MAX_VALUE) {
+        long start = channel.position();
+        return channel.map(FileChannel.MapMode.READ_ONLY,
+            start, size - start);
+      }
+    }
+    ReadableByteChannel channel = Channels.newChannel(is);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    while (channel.read(buffer) >= 0) {
+      if (!buffer.hasRemaining()) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(2 * buffer.capacity());
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  void read() {
+    while (position < limit &&
+        (in.get(position) == 'c' || isEndOfLine(in.get(position)))) {
+      skipLine();
+    }
+    if (position >= limit || in.get(position) != 'p') {
+      throw new RuntimeException("!!No problem descrioption");
+    }
+    position++;
+    skipBlanks();
+    if (position + 2 > limit ||
+        in.get(position) != 't' || in.get(position + 1) != 'w') {
+      throw new RuntimeException("!!Not treewidth instance");
+    }
+    position += 2;
+    n = nextInt();
+    int m = nextInt();
+    skipLine();
+    int edges = position;
+
+    // the degrees, with duplicates
+    offsets = new int[n + 1];
+    for (int i = 0; i < m; i++) {
+      nextEdge();
+      int u = nextVertex();
+      int v = nextVertex();
+      offsets[u]++;
+      if (v != u) {
+        offsets[v]++;
+      }
+      skipLine();
+    }
+    for (int v = 0; v < n; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+
+    // filled from the ends of the lists backwards, as the offsets
+    // then end up at the starts
+    adjacency = new int[offsets[n]];
+    position = edges;
+    for (int i = 0; i < m; i++) {
+      nextEdge();
+      int u = nextVertex();
+      int v = nextVertex();
+      adjacency[--offsets[u]] = v;
+      if (v != u) {
+        adjacency[--offsets[v]] = u;
+      }
+      skipLine();
+    }
+    for (int v = 0; v < n; v++) {
+      reverse(adjacency, offsets[v], offsets[v + 1]);
+    }
+
+    // the first occurrence of each neighbor is kept
+    int[] mark = new int[n];
+    Arrays.fill(mark, -1);
+    int k = 0;
+    for (int v = 0; v < n; v++) {
+      int start = offsets[v];
+      offsets[v] = k;
+      for (int i = start; i < offsets[v + 1]; i++) {
+        int w = adjacency[i];
+        if (mark[w] != v) {
+          mark[w] = v;
+          adjacency[k++] = w;
+        }
+      }
+    }
+    offsets[n] = k;
+    if (k < adjacency.length) {
+      adjacency = Arrays.copyOf(adjacency, k);
+    }
+  }
+
+  static void reverse(int[] a, int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      int t = a[i];
+      a[i] = a[j];
+      a[j] = t;
+    }
+  }
+
+  /**
+   * Skips the comment lines before an edge
+   */
+  void nextEdge() {
+    while (position < limit &&
+        (in.get(position) == 'c' || isEndOfLine(in.get(position)))) {
+      skipLine();
+    }
+  }
+
+  int nextVertex() {
+    int v = nextInt() - 1;
+    if (v < 0 || v >= n) {
+      throw new RuntimeException("!!Vertex out of range: " + (v + 1));
+    }
+    return v;
+  }
+
+  int nextInt() {
+    skipBlanks();
+    int value = 0;
+    int start = position;
+    while (position < limit) {
+      int d = in.get(position) - '0';
+      if (d < 0 || d > 9) {
+        break;
+      }
+      value = value * 10 + d;
+      position++;
+    }
+    if (position == start) {
+      throw new RuntimeException("!!Number expected at byte " + position);
+    }
+    return value;
+  }
+
+  void skipBlanks() {
+    while (position < limit) {
+      byte b = in.get(position);
+      if (b != ' ' && b != '\t') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  void skipLine() {
+    while (position < limit && in.get(position) != '\n') {
+      position++;
+    }
+    position++;
+  }
+
+  static boolean isEndOfLine(byte b) {
+    return b == '\n' || b == '\r';
+  }
+}
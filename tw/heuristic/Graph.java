@@ -12,12 +12,12 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class provides a representation of undirected simple graphs.
@@ -33,6 +33,11 @@ import java.util.Stack;
  * Reading from and writing to files as well as some basic
  * graph algorithms, such as decomposition into connected components,
  * are provided.
+ * The neighbor sets and the breadth-first searches for components
+ * and connectivity may be used by several threads at once, as they
+ * are by the copies of a bag improved concurrently, which share the
+ * graphs of the nested bags.  Changing the edges and the depth-first
+ * searches, such as those for articulations, are not thread-safe.
  *
  * @author  Hisao Tamaki
  */
@@ -54,10 +59,14 @@ public class Graph {
 
   /**
    * set representation of the adjacencies.
-   * {@code neighborSet[v]} is the set of vertices
-   * adjacent to vertex {@code v}
+   * {@code neighborSets[v]} is the set of vertices
+   * adjacent to vertex {@code v}, made from the adjacency list
+   * when first asked for by {@code neighborSet(v)}; null before.
+   * Large sparse graphs, of which most vertices are only 
+   * visited through the adjacency lists, thus need no sets.
+   * A set made by one thread is published to the others as a whole.
    */
-  public VertexSet[] neighborSet;
+  private AtomicReferenceArray<VertexSet> neighborSets;
 
   /**
    * the set of all vertices, represented as an all-one
@@ -65,6 +74,13 @@ public class Graph {
    */
   public VertexSet all;
 
+  /**
+   * the number of changes made to the edges, by which
+   * graphs made from this graph can tell if they are
+   * still up to date
+   */
+  int modCount;
+
   /*
    * variables used in the DFS aglgorithms fo
    * connected componetns and
@@ -77,6 +93,48 @@ public class Graph {
   private int dfCount;
   private VertexSet articulationSet;
 
+  /**
+   * The scratch space of the breadth-first searches for
+   * connected components, one for each thread, for graphs
+   * of up to as many vertices as its arrays are long:
+   * a vertex is reached in the current search if its
+   * {@code reached} value is {@code stamp} or more.
+   */
+  private static final class Search {
+    int reached[] = new int[0];
+    int touched[] = new int[0];
+    int queue[] = new int[0];
+    int stamp;
+
+    /**
+     * Starts a search on a graph of {@code n} vertices,
+     * enlarging the arrays if needed
+     * @return the smallest stamp of the search
+     */
+    int start(int n) {
+      if (reached.length < n) {
+        reached = new int[n];
+        touched = new int[n];
+        queue = new int[n];
+        stamp = 0;
+      }
+      if (stamp > Integer.MAX_VALUE - n - 2) {
+        Arrays.fill(reached, 0);
+        Arrays.fill(touched, 0);
+        stamp = 0;
+      }
+      return ++stamp;
+    }
+  }
+
+  private static final ThreadLocal<Search> searches =
+      new ThreadLocal<Search>() {
+    @Override
+    protected Search initialValue() {
+      return new Search();
+    }
+  };
+
   /**
    * Construct a graph with the specified number of
    * vertices and no edges.  Edges will be added by
@@ -87,16 +145,56 @@ public class Graph {
     this.n = n;
     this.degree = new int[n];
     this.neighbor = new int[n][];
-    this.neighborSet = new VertexSet[n];
+    this.neighborSets = new AtomicReferenceArray<VertexSet>(n);
+    int vertices[] = new int[n];
     for (int i = 0; i < n; i++) {
-      neighborSet[i] = new VertexSet(n);
+      vertices[i] = i;
     }
-    this.all = new VertexSet(n);
-    for (int i = 0; i < n; i++) {
-      all.set(i);
+    this.all = new VertexSet(n, vertices);
+  }
+
+  /**
+   * Construct a graph with the adjacency lists read by a 
+   * {@code GrReader}
+   * @param reader the reader
+   */
+  Graph(GrReader reader) {
+    this(reader.n);
+    for (int v = 0; v < n; v++) {
+      int start = reader.offsets[v];
+      int end = reader.offsets[v + 1];
+      degree[v] = end - start;
+      if (start < end) {
+        neighbor[v] = Arrays.copyOfRange(reader.adjacency, start, end);
+      }
     }
   }
 
+  /**
+   * Returns the set of the vertices adjacent to the given vertex,
+   * making it from the adjacency list if not made yet.  The set is
+   * that of the graph, which it updates: changing it changes the
+   * graph, without its adjacency lists.
+   * @param v vertex number
+   * @return the neighbor set of {@code v}
+   */
+  public VertexSet neighborSet(int v) {
+    VertexSet set = neighborSets.get(v);
+    if (set == null) {
+      if (neighbor[v] == null) {
+        set = new VertexSet(n);
+      }
+      else {
+        set = new VertexSet(n, neighbor[v]);
+      }
+      if (!neighborSets.compareAndSet(v, null, set)) {
+        // made by another thread meanwhile
+        set = neighborSets.get(v);
+      }
+    }
+    return set;
+  }
+
   /**
    * Add an edge between two specified vertices.
    * This is done by adding each vertex to the adjacent list
@@ -119,6 +217,7 @@ public class Graph {
     if (indexOf(v, neighbor[u]) >= 0) {
       return;
     }
+    modCount++;
     degree[u]++;
     if (neighbor[u] == null) {
       neighbor[u] = new int[]{v};
@@ -128,15 +227,12 @@ public class Graph {
       neighbor[u][degree[u] - 1] = v;
     }
 
-    if (neighborSet[u] == null) {
-      neighborSet[u] = new VertexSet(n);
+    if (neighborSets.get(u) != null) {
+      neighborSets.get(u).set(v);
     }
-    neighborSet[u].set(v);
-
-    if (neighborSet[v] == null) {
-      neighborSet[v] = new VertexSet(n);
+    if (neighborSets.get(v) != null) {
+      neighborSets.get(v).set(u);
     }
-    neighborSet[v].set(u);
   }
 
   /**
@@ -168,6 +264,10 @@ public class Graph {
    *
    */
   public void inheritEdges(Graph g, int conv[], int inv[]) {
+    if (numberOfEdges() == 0) {
+      setEdges(g, conv, inv);
+      return;
+    }
     for (int v = 0; v < n; v++) {
       int x = inv[v];
       for (int i = 0; i < g.degree[x]; i++) {
@@ -180,6 +280,48 @@ public class Graph {
     }
   }
 
+  /**
+   * Sets the adjacency lists of this graph, which has no edges, to
+   * those inherited from the given graph as by {@code addEdge} in
+   * {@code inheritEdges}, and in the same order, but allocating each
+   * list once: the degrees are counted in a first pass.  An edge
+   * is added when met from its smaller end, as it is met again from
+   * the other.
+   */
+  private void setEdges(Graph g, int conv[], int inv[]) {
+    modCount++;
+    for (int v = 0; v < n; v++) {
+      int x = inv[v];
+      for (int i = 0; i < g.degree[x]; i++) {
+        int u = conv[g.neighbor[x][i]];
+        if (u >= v) {
+          degree[u]++;
+          if (u != v) {
+            degree[v]++;
+          }
+        }
+      }
+    }
+    int fill[] = new int[n];
+    for (int v = 0; v < n; v++) {
+      if (degree[v] > 0) {
+        neighbor[v] = new int[degree[v]];
+      }
+    }
+    for (int v = 0; v < n; v++) {
+      int x = inv[v];
+      for (int i = 0; i < g.degree[x]; i++) {
+        int u = conv[g.neighbor[x][i]];
+        if (u >= v) {
+          neighbor[u][fill[u]++] = v;
+          if (u != v) {
+            neighbor[v][fill[v]++] = u;
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Read a graph from the specified file in {@code dgf} format and
    * return the resulting {@code Graph} object.
@@ -309,36 +451,7 @@ public class Graph {
    */
   public static Graph readGraph(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
+      return new Graph(new GrReader(file));
     } catch (FileNotFoundException e) {
       e.printStackTrace();
     } catch (IOException e) {
@@ -349,38 +462,7 @@ public class Graph {
 
   public static Graph readGraph(InputStream is){
     try {
-      BufferedReader br = new BufferedReader(new InputStreamReader(is));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return new Graph(new GrReader(is));
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -447,7 +529,7 @@ public class Graph {
     VertexSet result = new VertexSet(n);
     for (int v = set.nextSetBit(0); v >= 0;
         v = set.nextSetBit(v + 1)) {
-      result.or(neighborSet[v]);
+      result.or(neighborSet(v));
     }
     result.andNot(set);
     return result;
@@ -463,7 +545,7 @@ public class Graph {
     VertexSet result = (VertexSet) set.clone();
     for (int v = set.nextSetBit(0); v >= 0;
         v = set.nextSetBit(v + 1)) {
-      result.or(neighborSet[v]);
+      result.or(neighborSet(v));
     }
     return result;
   }
@@ -528,90 +610,99 @@ public class Graph {
   /**
    * Compute connected components of this target graph after
    * the removal of the vertices in the given separator,
-   * by means of iterated bit operations
+   * by breadth-first searches on the adjacency lists
    * @param separator set of vertices to be removed
    * @return the arrayList of connected components,
    * the vertex set of each component represented by a {@code VertexSet}
    */
   public ArrayList<VertexSet> getComponents(VertexSet separator) {
-    ArrayList<VertexSet> result = new ArrayList<VertexSet>();
-    VertexSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      //      for (VertexSet found: result) {
-      //        if (found.get(v)) {
-      //          System.err.println(v + " is already in " + found);
-      //        }
-      //      }
-      VertexSet c = (VertexSet) neighborSet[v].clone();
-      VertexSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        VertexSet save = (VertexSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          //          for (VertexSet found: result) {
-          //            if (found.intersects(neighborSet[w])) {
-          //              System.err.println("the neighborSet of " + w + ": " + 
-          //                  neighborSet[w]  + " intersects " + found);
-          //            }
-          //          }
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      result.add(c.subtract(separator));
-      rest.andNot(c);
-    }
-
-    //    for (int i = 0; i < result.size(); i++) {
-    //      for (int j = i + 1; j < result.size(); j++) {
-    //        if (result.get(i).intersects(result.get(j))) {
-    //          writeTo(System.err);
-    //          System.err.println(separator);
-    //          checkConsistency();
-    //          System.err.println(result.get(i).intersectWith(result.get(j)));
-    //          throw new RuntimeException("non-disjoint components " 
-    //              + result.get(i) + ", " + result.get(j));
-    //        }
-    //      }
-    //    }
-    return result;
+    return getComponents(separator, false);
   }
 
   /**
    * Compute the full components associated with the given separator,
-   * by means of iterated bit operations
+   * by breadth-first searches on the adjacency lists
    * @param separator set of vertices to be removed
    * @return the arrayList of full components,
    * the vertex set of each component represented by a {@code VertexSet}
    */
   public ArrayList<VertexSet> getFullComponents(VertexSet separator) {
+    return getComponents(separator, true);
+  }
+
+  private ArrayList<VertexSet> getComponents(VertexSet separator, 
+      boolean fullOnly) {
     ArrayList<VertexSet> result = new ArrayList<VertexSet>();
-    VertexSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      VertexSet c = (VertexSet) neighborSet[v].clone();
-      VertexSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        VertexSet save = (VertexSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
+    Search s = searches.get();
+    int first = s.start(n);
+    int separatorSize = 0;
+    for (int v = separator.nextSetBit(0); v >= 0;
+        v = separator.nextSetBit(v + 1)) {
+      s.reached[v] = first;
+      separatorSize++;
+    }
+    for (int v = 0; v < n; v++) {
+      if (s.reached[v] >= first) {
+        continue;
       }
-      if (separator.isSubset(c)) {
-        result.add(c.subtract(separator));
+      int component = ++s.stamp;
+      int size = search(s, v, component, first);
+      if (!fullOnly ||
+          countTouched(s, size, component, first) == separatorSize) {
+        result.add(new VertexSet(n, Arrays.copyOf(s.queue, size)));
       }
-      rest.andNot(c);
     }
     return result;
   }
 
+  /**
+   * Searches the vertices reachable from the given vertex through
+   * vertices not reached, stamping them and listing them in
+   * {@code queue}
+   * @param s the scratch space of the search
+   * @param v the vertex to start from
+   * @param component the stamp of the vertices reached
+   * @param first the smallest stamp of the search
+   * @return the number of the vertices reached
+   */
+  private int search(Search s, int v, int component, int first) {
+    int reached[] = s.reached;
+    int queue[] = s.queue;
+    reached[v] = component;
+    queue[0] = v;
+    int size = 1;
+    for (int head = 0; head < size; head++) {
+      int u = queue[head];
+      for (int i = 0; i < degree[u]; i++) {
+        int w = neighbor[u][i];
+        if (reached[w] < first) {
+          reached[w] = component;
+          queue[size++] = w;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Counts the separator vertices, stamped {@code first}, adjacent
+   * to the component listed in {@code queue}
+   */
+  private int countTouched(Search s, int size, int component, int first) {
+    int count = 0;
+    for (int j = 0; j < size; j++) {
+      int u = s.queue[j];
+      for (int i = 0; i < degree[u]; i++) {
+        int w = neighbor[u][i];
+        if (s.reached[w] == first && s.touched[w] != component) {
+          s.touched[w] = component;
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
   /**
    * Checks if the given induced subgraph of this target graph is connected.
    * @param vertices the set of vertices inducing the subraph
@@ -624,19 +715,16 @@ public class Graph {
       return true;
     }
 
-    VertexSet c = (VertexSet) neighborSet[v].clone();
-    VertexSet toScan = c.intersectWith(vertices);
-    c.set(v);
-    while (!toScan.isEmpty()) {
-      VertexSet save = (VertexSet) c.clone();
-      for (int w = toScan.nextSetBit(0); w >= 0;
-          w = toScan.nextSetBit(w + 1)) {
-        c.or(neighborSet[w]);
-      }
-      toScan = c.subtract(save);
-      toScan.and(vertices);
+    // the vertices outside are stamped as the separator of a search
+    Search s = searches.get();
+    int first = s.start(n);
+    Arrays.fill(s.reached, 0, n, first);
+    int count = 0;
+    for (int w = v; w >= 0; w = vertices.nextSetBit(w + 1)) {
+      s.reached[w] = 0;
+      count++;
     }
-    return vertices.isSubset(c);
+    return search(s, v, ++s.stamp, first) == count;
   }
 
   /**
@@ -865,7 +953,7 @@ public class Graph {
   public void fill(VertexSet vertexSet) {
     for (int v = vertexSet.nextSetBit(0); v >= 0;
         v = vertexSet.nextSetBit(v + 1)) {
-      VertexSet missing = vertexSet.subtract(neighborSet[v]);
+      VertexSet missing = vertexSet.subtract(neighborSet(v));
       for (int w = missing.nextSetBit(v + 1); w >= 0;
           w = missing.nextSetBit(w + 1)) {
         addEdge(v, w);
@@ -989,14 +1077,11 @@ public class Graph {
    */
   public Graph copy() {
     Graph tmp = new Graph(n);
+    int identity[] = new int[n];
     for (int v = 0; v < n; v++) {
-      if(neighbor[v] != null){
-        for (int j = 0; j < neighbor[v].length; j++) {
-          int w = neighbor[v][j];
-          tmp.addEdge(v, w);
-        }
-      }
+      identity[v] = v;
     }
+    tmp.setEdges(this, identity, identity);
     return tmp;
   }
 
@@ -1012,8 +1097,8 @@ public class Graph {
             indexOf(w, neighbor[v]) < 0) {
           throw new RuntimeException("adjacency lists inconsistent " + v + ", " + w);
         }
-        if (neighborSet[v].get(w) &&
-            !neighborSet[v].get(w)) {
+        if (neighborSet(v).get(w) &&
+            !neighborSet(v).get(w)) {
           throw new RuntimeException("neighborSets inconsistent " + v + ", " + w);
         }
       }
@@ -44,6 +44,10 @@ public class GreedyDecomposer {
 	Edge[] edges;
 	int[] oldFill;
 
+	// the stamps of the neighbors marked by markNeighbors
+	int[] mark;
+	int markStamp;
+
 	boolean modeMinDegree;
 	boolean modeExact;
 
@@ -177,7 +181,7 @@ public class GreedyDecomposer {
 
 			Set<Separator> vminInSeparators = frontier.get(vmin);
 			if(vminInSeparators.size() == 1) {
-				VertexSet neighborSet = g.neighborSet[vmin].intersectWith(remaining);
+				VertexSet neighborSet = remainingNeighborSet(vmin);
 				Separator	uniqueSeparator = null;
 				for(Separator s : vminInSeparators) {
 					uniqueSeparator = s;
@@ -194,7 +198,7 @@ public class GreedyDecomposer {
 					remaining.clear(vmin);
 
 					if(!modeMinDegree && modeExact) {
-						VertexSet vs = g.neighborSet[vmin].intersectWith(remaining);
+						VertexSet vs = remainingNeighborSet(vmin);
 						VertexSet updateSet = g.closedNeighborSet(vs);
 						updateSet.and(remaining);
 						updateProcess(updateSet);
@@ -205,15 +209,15 @@ public class GreedyDecomposer {
 
 			VertexSet toBeAClique = new VertexSet(g.n);
 			toBeAClique.set(vmin);
-			toBeAClique.or(g.neighborSet[vmin].intersectWith(remaining));
+			toBeAClique.or(remainingNeighborSet(vmin));
 			Bag bag = whole.addNestedBag(toBeAClique);
 
 			VertexSet sep = toBeAClique.subtract(new VertexSet(new int[]{vmin}));
 
 			if(modeMinDegree) {
 				for(int v = sep.nextSetBit(0); v >= 0; v = sep.nextSetBit(v + 1)) {
-					g.neighborSet[v].or(sep);
-					g.neighborSet[v].clear(v);
+					g.neighborSet(v).or(sep);
+					g.neighborSet(v).clear(v);
 				}
 			}
 			else {
@@ -250,7 +254,7 @@ public class GreedyDecomposer {
 			remaining.clear(vmin);
 
 			if(!modeMinDegree && modeExact) {
-				VertexSet vs = g.neighborSet[vmin].intersectWith(remaining);
+				VertexSet vs = remainingNeighborSet(vmin);
 				VertexSet updateSet = g.closedNeighborSet(vs);
 				updateSet.and(remaining);
 				updateProcess(updateSet);
@@ -308,29 +312,72 @@ public class GreedyDecomposer {
 	}
 
 	private int degreeOf(int v) {
-		VertexSet vs = g.neighborSet[v].intersectWith(remaining);
+		VertexSet vs = g.neighborSet(v).intersectWith(remaining);
 		return vs.cardinality();
 	}
 
 	private int fillCount(int v) {
-		VertexSet vNeighborSet = remaining.intersectWith(g.neighborSet[v]);
+		int[] vNeighbors = remainingNeighbors(v);
 		ArrayList<Edge> addEdges = new ArrayList<>();
 		int count = 0;
 
-		for(int w = vNeighborSet.nextSetBit(0); w >= 0; w = vNeighborSet.nextSetBit(w + 1)) {
-			VertexSet noNeighborSet = vNeighborSet.subtract(vNeighborSet.intersectWith(g.neighborSet[w]));
-			noNeighborSet.and(remaining);
-			noNeighborSet.clear(w);
-			for(int x = noNeighborSet.nextSetBit(w); x >= 0; x = noNeighborSet.nextSetBit(x + 1)) {
-				Edge e = new Edge(w, x);
-				addEdges.add(e);
-				count++;
+		for(int i = 0; i < vNeighbors.length; i++) {
+			int w = vNeighbors[i];
+			markNeighbors(w);
+			for(int j = i + 1; j < vNeighbors.length; j++) {
+				int x = vNeighbors[j];
+				if(mark[x] != markStamp) {
+					Edge e = new Edge(w, x);
+					addEdges.add(e);
+					count++;
+				}
 			}
 		}
 		edges = addEdges.toArray(new Edge[0]);
 		return count;
 	}
 
+	/**
+	 * Returns the remaining neighbors of the given vertex in 
+	 * ascending order, from its adjacency list, which is kept
+	 * up to date unless in the min-degree mode
+	 */
+	private int[] remainingNeighbors(int v) {
+		int[] list = g.neighbor[v];
+		int[] result = new int[g.degree[v]];
+		int k = 0;
+		for(int i = 0; i < g.degree[v]; i++) {
+			if(remaining.get(list[i])) {
+				result[k++] = list[i];
+			}
+		}
+		result = Arrays.copyOf(result, k);
+		Arrays.sort(result);
+		return result;
+	}
+
+	private VertexSet remainingNeighborSet(int v) {
+		if(modeMinDegree) {
+			// the neighbor sets are filled in this mode, not the lists
+			return g.neighborSet(v).intersectWith(remaining);
+		}
+		return new VertexSet(g.n, remainingNeighbors(v));
+	}
+
+	/**
+	 * Marks the neighbors of the given vertex with a new stamp
+	 */
+	private void markNeighbors(int w) {
+		if(mark == null || markStamp == Integer.MAX_VALUE) {
+			mark = new int[g.n];
+			markStamp = 0;
+		}
+		markStamp++;
+		for(int i = 0; i < g.degree[w]; i++) {
+			mark[g.neighbor[w][i]] = markStamp;
+		}
+	}
+
 	private	class Pair implements Comparable<Pair> {
 		int v;
 		int cost;
@@ -12,7 +12,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
@@ -131,8 +130,8 @@ public class MTDecomposerHeuristic {
   
   public boolean decompose() {
     abort = false;
-    blockCache = new HashMap<>();
-    mBlockCache = new HashMap<>();
+    blockCache = new VertexSetMap<>(g.n);
+    mBlockCache = new VertexSetMap<>(g.n);
 
     pendingEndorsers = new ArrayList<>();
     pmcCache = new HashSet<>();
@@ -169,14 +168,14 @@ public class MTDecomposerHeuristic {
     // endorserMap = new HashMap<>();
 
     tBlockSieve = new LayeredSieve(g.n, targetWidth);
-    tBlockCache = new HashMap<>();
+    tBlockCache = new VertexSetMap<>(g.n);
 
     readyQueue = new LinkedList<>();
 
     readyQueue.addAll(mBlockCache.values());
     
     for (int v = 0; v < g.n; v++) {
-      VertexSet cnb = (VertexSet) g.neighborSet[v].clone();
+      VertexSet cnb = (VertexSet) g.neighborSet(v).clone();
       cnb.set(v);
 
       if (DEBUG) {
@@ -516,12 +515,12 @@ public class MTDecomposerHeuristic {
         System.out.println("delta1 = " + delta1);
         for (int v = delta1.nextSetBit(0); v >= 0; v = delta1
             .nextSetBit(v + 1)) {
-          System.out.println("  " + v + "(" + g.neighborSet[v] + ")");
+          System.out.println("  " + v + "(" + g.neighborSet(v) + ")");
         }
         System.out.println("delta2 = " + delta2);
         for (int v = delta2.nextSetBit(0); v >= 0; v = delta2
             .nextSetBit(v + 1)) {
-          System.out.println("  " + v + "(" + g.neighborSet[v] + ")");
+          System.out.println("  " + v + "(" + g.neighborSet(v) + ")");
         }
 
         TBlock tBlock = tBlockCache.get(inletsUnion);
@@ -538,7 +537,7 @@ public class MTDecomposerHeuristic {
 
   boolean isFullComponent(VertexSet component, VertexSet sep) {
     for (int v = sep.nextSetBit(0); v >= 0; v = sep.nextSetBit(v + 1)) {
-      if (component.isDisjoint(g.neighborSet[v])) {
+      if (component.isDisjoint(g.neighborSet(v))) {
         return false;
       }
     }
@@ -549,14 +548,14 @@ public class MTDecomposerHeuristic {
     ArrayList<Block> result = new ArrayList<Block>();
     VertexSet rest = g.all.subtract(separator);
     for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-      VertexSet c = g.neighborSet[v].subtract(separator);
+      VertexSet c = g.neighborSet(v).subtract(separator);
       VertexSet toBeScanned = (VertexSet) c.clone();
       c.set(v);
       while (!toBeScanned.isEmpty()) {
         VertexSet save = (VertexSet) c.clone();
         for (int w = toBeScanned.nextSetBit(0); w >= 0; w = toBeScanned
             .nextSetBit(w + 1)) {
-          c.or(g.neighborSet[w]);
+          c.or(g.neighborSet(w));
         }
         c.andNot(separator);
         toBeScanned = c.subtract(save);
@@ -586,14 +585,14 @@ public class MTDecomposerHeuristic {
       // the scanning order ensures that the first full component
       // encountered is the outbound one
       for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-        VertexSet c = (VertexSet) g.neighborSet[v].clone();
+        VertexSet c = (VertexSet) g.neighborSet(v).clone();
         VertexSet toBeScanned = c.subtract(separator);
         c.set(v);
         while (!toBeScanned.isEmpty()) {
           VertexSet save = (VertexSet) c.clone();
           for (int w = toBeScanned.nextSetBit(0); w >= 0; 
               w = toBeScanned.nextSetBit(w + 1)) {
-            c.or(g.neighborSet[w]);
+            c.or(g.neighborSet(w));
           }
           toBeScanned = c.subtract(save).subtract(separator);
         }
@@ -817,7 +816,7 @@ public class MTDecomposerHeuristic {
         }
 
         VertexSet newsep = separator.unionWith(
-          g.neighborSet[v].intersectWith(openComponent));
+          g.neighborSet(v).intersectWith(openComponent));
         if (newsep.cardinality() <= targetWidth + 1) {
 
           if (DEBUG) {
@@ -908,7 +907,7 @@ public class MTDecomposerHeuristic {
       
       for (int v = vertexSet.nextSetBit(0); v >= 0; 
             v = vertexSet.nextSetBit(v + 1)) {
-        VertexSet rest = vertexSet.subtract(g.neighborSet[v]);
+        VertexSet rest = vertexSet.subtract(g.neighborSet(v));
         rest.clear(v);
         if (outbound != null && outbound.separator.get(v)) {
           rest.andNot(outbound.separator);
@@ -1256,7 +1255,7 @@ public class MTDecomposerHeuristic {
 
     System.out.println("Graph " + name + " read");
     // for (int v = 0; v < g.n; v++) {
-    // System.out.println(v + ": " + g.degree[v] + ", " + g.neighborSet[v]);
+    // System.out.println(v + ": " + g.degree[v] + ", " + g.neighborSet(v));
     // }
 
     long t0 = System.currentTimeMillis();
@@ -7,6 +7,7 @@ package tw.heuristic;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import java.util.ArrayList;
@@ -19,10 +20,21 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainDecomposer{
   public static enum Mode{
-    greedy, pathDecomposition, treeDecomposition
+    greedy(10, 3), pathDecomposition(30, 2), treeDecomposition(3, 3);
+
+    // the number of tries after which the neighborhood is enlarged,
+    // and the number of vertices by which it is
+    final int cycle, d;
+
+    Mode(int cycle, int d){
+      this.cycle = cycle;
+      this.d = d;
+    }
   }
   public static final long MAX_TIME = 1800000;
   public static final long INITIAL_TIME_MS = 4000;
@@ -30,14 +42,39 @@ public class MainDecomposer{
   public static final long CUT_D_TIME_MS = 300000;
   public static final long DETECT_TIME_MS = 10000;
 
-  private static Random random;
+  private static final ThreadLocal< Random > random = new ThreadLocal< >();
   private static Graph wholeGraph;
-  private static TreeDecomposition best;
+  private static final AtomicReference< TreeDecompositionSnapshot > published =
+    new AtomicReference< >();
   private static int[][] invs;
   private static Bag[] bags;
-  private static long detectSum;
+  private static final AtomicLong detectSum = new AtomicLong();
+  private static Scheduler scheduler = new Scheduler();
   private static long startTime;
 
+  /**
+   * The number of threads working on the components, or on the
+   * neighborhood of the largest bag if there is only one component;
+   * 1 for the sequential round robin
+   */
+  private static int parallelism = 1;
+
+  /**
+   * The state of a component in the parallel mode
+   */
+  private static class Component{
+    Bag bag;
+    // the flattened copy of the bag as last committed, and its width
+    Bag snapshot;
+    int width;
+    // whether the bag has been decomposed with small cuts and greedily
+    boolean prepared;
+    // whether a thread is working on the bag
+    boolean busy;
+  }
+
+  private static Component[] components;
+
   private static final boolean DEBUG = false;
 
   private static int countGD, countPD, countTD;
@@ -51,7 +88,11 @@ public class MainDecomposer{
     };
 
   public static TreeDecomposition getBestTreeDecompositionSoFar(){
-    return best;
+    TreeDecompositionSnapshot snapshot = published.get();
+    if(snapshot == null){
+      return null;
+    }
+    return snapshot.toTreeDecomposition();
   }
 
   private static void commit(){
@@ -63,70 +104,95 @@ public class MainDecomposer{
       comment("commit");
     }
 
-    Bag[] copiedBags = new Bag[bags.length];
-    for(int i = 0; i < copiedBags.length; i++){
-      copiedBags[i] = (Bag)bags[i].clone();
+    Bag[] snapshots = new Bag[bags.length];
+    int width = -1;
+    for(int i = 0; i < bags.length; i++){
+      snapshots[i] = snapshot(bags[i]);
+      width = Math.max(width, widthOf(snapshots[i]));
     }
 
-    if(bags.length == 1){
-      // trivial tree decomposition
-      if(copiedBags[0].nestedBags == null || copiedBags[0].nestedBags.isEmpty()){
-        TreeDecomposition trivial =
-          new TreeDecomposition(0, copiedBags[0].graph.n - 1, copiedBags[0].graph);
-        trivial.addBag(copiedBags[0].graph.all.toArray());
-        if(best == null || trivial.width < best.width){
-          best = trivial;
-          comment("width = " + best.width);
-          printTime();
-        }
-        return;
-      }
-
-      copiedBags[0].flatten();
-      TreeDecomposition td = copiedBags[0].toTreeDecomposition();
-      setWidth(td);
-
-      if(best == null || td.width < best.width){
-        best = td;
-        comment("width = " + best.width);
-        printTime();
-      }
-
+    TreeDecompositionSnapshot current = published.get();
+    if(current != null && width >= current.width){
       return;
     }
 
-    TreeDecomposition td = new TreeDecomposition(0, 0, wholeGraph);
-    for(int i = 0; i < copiedBags.length; i++){
-      // trivial tree decomposition
-      if(copiedBags[i].nestedBags == null || copiedBags[i].nestedBags.isEmpty()){
-        TreeDecomposition trivial =
-          new TreeDecomposition(0, copiedBags[i].graph.n - 1, copiedBags[i].graph);
-        trivial.addBag(copiedBags[i].graph.all.toArray());
-        td.combineWith(trivial, invs[i], null);
-      }
-      else{
-        copiedBags[i].flatten();
-        td.combineWith(copiedBags[i].toTreeDecomposition(), invs[i], null);
-      }
+    TreeDecompositionSnapshot.Builder builder =
+      new TreeDecompositionSnapshot.Builder(wholeGraph);
+    for(int i = 0; i < bags.length; i++){
+      builder.add(snapshots[i], bags.length == 1 ? null : invs[i]);
     }
-    setWidth(td);
+    publish(builder);
+  }
 
-    if(best == null || td.width < best.width){
-      best = td;
-      comment("width = " + best.width);
-      printTime();
+  /**
+   * Returns a copy of the given bag, flattened if it is decomposed
+   */
+  private static Bag snapshot(Bag bag){
+    Bag copiedBag = (Bag)bag.clone();
+    if(copiedBag.nestedBags != null && !copiedBag.nestedBags.isEmpty()){
+      copiedBag.flatten();
     }
+    return copiedBag;
   }
 
-  private static void setWidth(TreeDecomposition td){
-    if(td == null){
-      return;
+  /**
+   * Returns the width of the decomposition of a flattened bag, that of
+   * the trivial one if the bag is not decomposed
+   */
+  private static int widthOf(Bag flat){
+    if(flat.nestedBags == null || flat.nestedBags.isEmpty()){
+      return flat.graph.n - 1;
     }
     int width = -1;
-    for(int i = 1; i <= td.nb; i++){
-      width = Math.max(width, td.bags[i].length - 1);
+    for(Bag nb : flat.nestedBags){
+      width = Math.max(width, nb.size - 1);
+    }
+    for(Separator s : flat.separators){
+      width = Math.max(width, s.size - 1);
+    }
+    return width;
+  }
+
+  /**
+   * Combines the snapshots of the components into a new best
+   * decomposition, if they are narrower than the best so far
+   */
+  private static synchronized void commitSnapshots(){
+    int width = 0;
+    for(Component c : components){
+      width = Math.max(width, c.width);
+    }
+    TreeDecompositionSnapshot current = published.get();
+    if(current != null && width >= current.width){
+      return;
+    }
+
+    TreeDecompositionSnapshot.Builder builder =
+      new TreeDecompositionSnapshot.Builder(wholeGraph);
+    for(int i = 0; i < components.length; i++){
+      builder.add(components[i].snapshot, invs[i]);
+    }
+    publish(builder);
+  }
+
+  /**
+   * Builds the snapshot of the decomposition collected, sharing the
+   * unchanged bags with the best so far, and publishes it unless a
+   * narrower one has been published meanwhile
+   */
+  private static void publish(TreeDecompositionSnapshot.Builder builder){
+    TreeDecompositionSnapshot snapshot = builder.build(published.get());
+    while(true){
+      TreeDecompositionSnapshot current = published.get();
+      if(current != null && current.width < snapshot.width){
+        return;
+      }
+      if(published.compareAndSet(current, snapshot)){
+        break;
+      }
     }
-    td.width = width;
+    comment("width = " + snapshot.width);
+    printTime();
   }
 
   private static void comment(String comment){
@@ -139,16 +205,21 @@ public class MainDecomposer{
 
   private static void initializeForDecomposition(Graph graph, long seed){
     wholeGraph = graph;
-    best = null;
     bags = null;
     invs = null;
-    detectSum = 0;
-    random = new Random(seed);
+    detectSum.set(0);
+    components = null;
+    scheduler = new Scheduler();
+    random.set(new Random(seed));
     startTime = System.currentTimeMillis();
 
     // trivial tree decomposition
-    best = new TreeDecomposition(0, wholeGraph.n - 1, wholeGraph);
-    best.addBag(wholeGraph.all.toArray());
+    TreeDecompositionSnapshot.Builder trivial =
+      new TreeDecompositionSnapshot.Builder(wholeGraph);
+    if(wholeGraph.n > 0){
+      trivial.add(new Bag(wholeGraph), null);
+    }
+    published.set(trivial.build(null));
 
     if(DEBUG){
       comment("seed = " + seed);
@@ -159,8 +230,7 @@ public class MainDecomposer{
     initializeForDecomposition(graph, seed);
 
     if(graph.n == 0){
-      best = new TreeDecomposition(0, -1, graph);
-      return best;
+      return getBestTreeDecompositionSoFar();
     }
 
     ArrayList< VertexSet > components = graph.getComponents(new VertexSet());
@@ -169,9 +239,7 @@ public class MainDecomposer{
 
     if(nc == 1){
       if(graph.n <= 2){
-        best = new TreeDecomposition(0, graph.n - 1, graph);
-        best.addBag(graph.all.toArray());
-        return best;
+        return getBestTreeDecompositionSoFar();
       }
 
       bags = new Bag[1];
@@ -196,8 +264,8 @@ public class MainDecomposer{
 
       while(!bags[0].optimal){
         improveWithSeparators(bags[0], bags[0].getWidth());
-        commit();
         bags[0].flatten();
+        commit();
       }
 
       return getBestTreeDecompositionSoFar();
@@ -231,6 +299,11 @@ public class MainDecomposer{
 
     commit();
 
+    if(parallelism > 1){
+      decomposeInParallel(seed);
+      return getBestTreeDecompositionSoFar();
+    }
+
     for(int i = 0; i < nc; i++){
       decomposeWithSmallCuts(bags[i]);
     }
@@ -262,8 +335,8 @@ public class MainDecomposer{
     while(!queue.isEmpty()){
       Bag b = queue.poll();
       improveWithSeparators(b, b.getWidth());
-      commit();
       b.flatten();
+      commit();
       if(!b.optimal){
         queue.offer(b);
       }
@@ -272,6 +345,137 @@ public class MainDecomposer{
     return getBestTreeDecompositionSoFar();
   }
 
+  /**
+   * Decomposes the components of the whole graph by {@code parallelism}
+   * threads.  Each thread takes a component, decomposes it with small
+   * cuts and greedily the first time and improves it afterwards, and 
+   * commits its decomposition.  A component whose width is below that 
+   * of the widest one is left as it is until the widest improves.
+   */
+  private static void decomposeInParallel(long seed){
+    components = new Component[bags.length];
+    for(int i = 0; i < bags.length; i++){
+      components[i] = new Component();
+      components[i].bag = bags[i];
+      components[i].snapshot = snapshot(bags[i]);
+      components[i].width = widthOf(components[i].snapshot);
+    }
+
+    Thread[] workers = new Thread[Math.min(parallelism, bags.length)];
+    for(int i = 0; i < workers.length; i++){
+      final long workerSeed = seed + i;
+      workers[i] = new Thread(){
+        @Override
+        public void run(){
+          random.set(new Random(workerSeed));
+          work();
+        }
+      };
+      workers[i].start();
+    }
+
+    for(Thread worker : workers){
+      try{
+        worker.join();
+      }
+      catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static void work(){
+    Component c;
+    while((c = take()) != null){
+      try{
+        Bag b = c.bag;
+        if(!c.prepared){
+          decomposeWithSmallCuts(b);
+          if(b.countSafeSeparators() == 0){
+            decomposeGreedy(b);
+          }
+          else{
+            for(Bag nb : b.nestedBags){
+              nb.makeRefinable();
+              decomposeGreedy(nb);
+            }
+            b.flatten();
+          }
+        }
+        else{
+          improveWithSeparators(b, b.getWidth());
+          b.flatten();
+        }
+        Bag snapshot = snapshot(b);
+        int width = widthOf(snapshot);
+        synchronized(MainDecomposer.class){
+          c.snapshot = snapshot;
+          c.width = width;
+        }
+      }
+      finally{
+        release(c);
+      }
+      commitSnapshots();
+    }
+  }
+
+  /**
+   * Returns a component to work on, waiting while the components worth 
+   * working on are busy: the largest one not yet decomposed, or else
+   * the widest one not optimal, if as wide as the widest of all.
+   * Returns null when no component is worth working on.
+   */
+  private static synchronized Component take(){
+    while(true){
+      int width = 0;
+      for(Component c : components){
+        width = Math.max(width, c.width);
+      }
+
+      Component chosen = null;
+      boolean busy = false;
+      for(Component c : components){
+        if(c.busy){
+          busy = true;
+          continue;
+        }
+        if(!c.prepared){
+          if(chosen == null || chosen.prepared || 
+              c.bag.graph.n > chosen.bag.graph.n){
+            chosen = c;
+          }
+        }
+        else if(!c.bag.optimal && c.width >= width && 
+            (chosen == null || (chosen.prepared && c.width > chosen.width))){
+          chosen = c;
+        }
+      }
+
+      if(chosen != null){
+        chosen.busy = true;
+        return chosen;
+      }
+      if(!busy){
+        return null;
+      }
+      try{
+        MainDecomposer.class.wait();
+      }
+      catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+
+  private static synchronized void release(Component c){
+    c.prepared = true;
+    c.busy = false;
+    MainDecomposer.class.notifyAll();
+  }
+
   private static void improveWithSeparators(Bag bag, int k){
     if(bag.parent != null){
       bag.makeLocalGraph();
@@ -294,8 +498,9 @@ public class MainDecomposer{
       return;
     }
 
-    if(detectSum < DETECT_TIME_MS){
-      detectSum += bag.detectSafeSeparators(DETECT_TIME_MS - detectSum);
+    long detected = detectSum.get();
+    if(detected < DETECT_TIME_MS){
+      detectSum.addAndGet(bag.detectSafeSeparators(DETECT_TIME_MS - detected));
     }
 
     if(bag.countSafeSeparators() == 0){
@@ -330,45 +535,114 @@ public class MainDecomposer{
           maxBag = nb;
         }
       }
-      long timeMS = INITIAL_TIME_MS;
-      int gdVS = maxBag.size, pdVS = maxBag.size, tdVS = maxBag.size;
-      int count = 0;
-      while(true){
-        if(DEBUG){
-          comment("timeMS = " + timeMS);
-          comment("gdVS = " + gdVS);
-          comment("pdVS = " + pdVS);
-          comment("tdVS = " + tdVS);
-          comment("countGD = " + countGD);
-          comment("countPD = " + countPD);
-          comment("countTD = " + countTD);
-        }
-        gdVS = tryImproveWith(Mode.greedy, 
-            bag, maxBag, timeMS, gdVS, 10, 3);
-        if(gdVS < 0){
-          ++countGD;
-          break;
-        }
-        pdVS = tryImproveWith(Mode.pathDecomposition, 
-            bag, maxBag, timeMS, pdVS, 30, 2);
-        if(pdVS < 0){
-          ++countPD;
-          break;
-        }
-        tdVS = tryImproveWith(Mode.treeDecomposition, 
-            bag, maxBag, timeMS, tdVS, 3, 3);
-        if(tdVS < 0){
-          ++countTD;
+      if(DEBUG){
+        comment("countGD = " + countGD);
+        comment("countPD = " + countPD);
+        comment("countTD = " + countTD);
+        comment("scheduler = " + scheduler);
+      }
+      if(parallelism > 1 && components == null){
+        improveWithPortfolio(bag, maxBag);
+        continue;
+      }
+      int vs = 0;
+      boolean improved = false;
+      for(Mode mode : scheduler.order()){
+        int size = tryImproveWith(mode, bag, maxBag, 
+            scheduler.budget(mode, INITIAL_TIME_MS), 
+            scheduler.startSize(mode, maxBag.size), null);
+        if(size < 0){
+          count(mode);
+          improved = true;
           break;
         }
-        refresh(bag, maxBag, Math.max(gdVS, Math.max(pdVS, tdVS)) + 30);
-        break;
+        vs = Math.max(vs, size);
+      }
+      if(!improved){
+        refresh(bag, maxBag, vs + 30);
       }
     }
 
     return true;
   }
 
+  /**
+   * Tries to improve the neighborhood of {@code maxBag} by 
+   * {@code parallelism} threads at once, each on its own copy of the
+   * whole bag with its own random seed, going through the modes in the
+   * order of the scheduler from a different one.  The first copy 
+   * improved replaces the whole bag and the other threads stop at their
+   * next try.  If none is improved, the neighborhood is refreshed as in
+   * the sequential rounds.
+   */
+  private static void improveWithPortfolio(Bag whole, Bag maxBag){
+    final int index = whole.nestedBags.indexOf(maxBag);
+    final int vsSize = maxBag.size;
+    final AtomicReference< Bag > improved = new AtomicReference< >();
+    final int[] sizes = new int[parallelism];
+    final Mode[] modes = scheduler.order();
+
+    Thread[] workers = new Thread[parallelism];
+    for(int i = 0; i < workers.length; i++){
+      // the copies are made here, as the threads would share the graph
+      final Bag copy = whole.clone();
+      copy.graph = whole.graph.copy();
+      final int worker = i;
+      final long workerSeed = random.get().nextLong();
+      workers[i] = new Thread(){
+        @Override
+        public void run(){
+          random.set(new Random(workerSeed));
+          Bag copiedMaxBag = copy.nestedBags.get(index);
+          for(int j = 0; j < modes.length && improved.get() == null; j++){
+            Mode mode = modes[(worker + j) % modes.length];
+            int vs = tryImproveWith(mode, copy, copiedMaxBag, 
+                scheduler.budget(mode, INITIAL_TIME_MS), 
+                scheduler.startSize(mode, vsSize), improved);
+            if(vs < 0){
+              if(improved.compareAndSet(null, copy)){
+                count(mode);
+              }
+              return;
+            }
+            sizes[worker] = Math.max(sizes[worker], vs);
+          }
+        }
+      };
+      workers[i].start();
+    }
+
+    for(Thread worker : workers){
+      try{
+        worker.join();
+      }
+      catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    if(improved.get() != null){
+      replace(improved.get(), whole);
+      whole.setWidth();
+      return;
+    }
+
+    int vs = 0;
+    for(int size : sizes){
+      vs = Math.max(vs, size);
+    }
+    refresh(whole, maxBag, vs + 30);
+  }
+
+  private static void count(Mode mode){
+    switch(mode){
+      case greedy : ++countGD; break;
+      case pathDecomposition : ++countPD; break;
+      case treeDecomposition : ++countTD; break;
+    }
+  }
+
   private static void searchBagsToImproveLikeTree(Bag bag, Separator from, int max,
       int targetWidth, ArrayList< Separator > separatorsToCheck){
     Set< Bag > visitedBags = new HashSet< >();
@@ -422,7 +696,7 @@ public class MainDecomposer{
         }
       }
       if(!tBags.isEmpty()){
-        t = tBags.get(random.nextInt(tBags.size()));
+        t = tBags.get(random.get().nextInt(tBags.size()));
         visitedBags.add(t);
         vs.or(t.vertexSet);
       }
@@ -440,7 +714,7 @@ public class MainDecomposer{
         }
       }
       if(!sBags.isEmpty()){
-        s = sBags.get(random.nextInt(sBags.size()));
+        s = sBags.get(random.get().nextInt(sBags.size()));
         visitedBags.add(s);
         vs.or(s.vertexSet);
       }
@@ -465,7 +739,7 @@ public class MainDecomposer{
       }
     }
     if(!outers.isEmpty()){
-      Bag bag = outers.get(random.nextInt(outers.size()));
+      Bag bag = outers.get(random.get().nextInt(outers.size()));
       visitedBags.add(bag);
       vs.or(bag.vertexSet);
       collectSubsetBags(visitedBags, vs);
@@ -591,8 +865,10 @@ public class MainDecomposer{
 
   private static void decomposeGreedy(Bag bag){
     bag.initializeForDecomposition();
+    CPUTimer timer = new CPUTimer();
     GreedyDecomposer mfd = new GreedyDecomposer(bag);
     mfd.decompose();
+    scheduler.calibrate(Mode.greedy, timer.getThreadTime(), mfd.getTimeMS());
   }
 
   private static boolean decomposeWithSmallCuts(Bag bag){
@@ -664,8 +940,17 @@ public class MainDecomposer{
     }
   }
 
+  /**
+   * Tries to improve the neighborhood of {@code maxBag} with the given
+   * mode, enlarging it until the time is up.  Returns -1 if improved,
+   * and the size of the last neighborhood tried otherwise.  Gives up 
+   * early if {@code improved} is given and set by another thread.
+   * Each try is recorded by the scheduler.
+   */
   private static int tryImproveWith(Mode mode,
-      Bag whole, Bag maxBag, long time, int vsSize, int cycle, int d){
+      Bag whole, Bag maxBag, long time, int vsSize,
+      AtomicReference< Bag > improved){
+    int cycle = mode.cycle, d = mode.d;
     if(DEBUG){
       comment("mode = " + mode);
       comment("cycle = " + cycle);
@@ -677,7 +962,7 @@ public class MainDecomposer{
     int targetSize = vsSize;
     int count = 0;
     long sum = 0;
-    while(true){
+    while(improved == null || improved.get() == null){
       if(DEBUG){
         comment("k = " + k);
         comment("vs = " + targetSize);
@@ -722,6 +1007,8 @@ public class MainDecomposer{
       Bag triedBag = (Bag)target.clone();
       triedBag.initializeForDecomposition();
       boolean success = false;
+      CPUTimer timer = new CPUTimer();
+      long before = sum;
       switch(mode){
         case greedy :
           GreedyDecomposer gd = new GreedyDecomposer(triedBag);
@@ -750,6 +1037,8 @@ public class MainDecomposer{
           sum += mtd.getTimeMS();
           break;
       }
+      scheduler.record(mode, success && triedBag.getWidth() <= k - 1, 
+          timer.getThreadTime(), sum - before, targetSize - maxBag.size);
 
       for(Separator s : separatorsToCheck){
         s.wall = false;
@@ -835,7 +1124,7 @@ public class MainDecomposer{
     Runtime.getRuntime().addShutdownHook(new Thread(){
         @Override
         public void run(){
-        TreeDecomposition result = getBestTreeDecompositionSoFar();
+        TreeDecompositionSnapshot result = published.get();
         if(result == null){
         comment("no solution");
         return;
@@ -843,7 +1132,12 @@ public class MainDecomposer{
         //if(result.isValid(System.err)){
         comment("width = " + result.width);
         printTime();
-        result.writeTo(System.out);
+        try{
+          result.writeTo(new TdWriter(System.out));
+        }
+        catch(IOException e){
+          throw new RuntimeException(e);
+        }
         //}
         //if(result.isValid(System.err)){
         //  comment("validation ok");
@@ -852,8 +1146,13 @@ public class MainDecomposer{
         });
 
     long seed = 42;
-    if(args.length >= 2 && "-s".equals(args[0])){
-      seed = Long.parseLong(args[1]);
+    for(int i = 0; i + 1 < args.length; i += 2){
+      if("-s".equals(args[i])){
+        seed = Long.parseLong(args[i + 1]);
+      }
+      else if("-p".equals(args[i])){
+        parallelism = Integer.parseInt(args[i + 1]);
+      }
     }
 
     Graph graph = Graph.readGraph(System.in);
@@ -121,7 +121,7 @@ public class SafeSeparator {
     }
     if(separator.cardinality() == 3){
       int first = separator.nextSetBit(0);
-      VertexSet s = g.neighborSet[first];
+      VertexSet s = g.neighborSet(first);
       if(s.intersects(separator)){
         return true;
       }
@@ -164,7 +164,7 @@ public class SafeSeparator {
     public String toString() {
       StringBuilder sb = new StringBuilder();
       sb.append("left" + index + "(" + vertex + "):");
-      sb.append(", " + g.neighborSet[vertex]);
+      sb.append(", " + g.neighborSet(vertex));
       return sb.toString();
     }
   }
@@ -298,7 +298,7 @@ public class SafeSeparator {
         int j = i + 1;
         for (int w = separator.nextSetBit(v + 1); w >= 0;
             w = separator.nextSetBit(w + 1)) {
-          if (!g.neighborSet[v].get(w)) {
+          if (!g.neighborSet(v).get(w)) {
             missingEdgeList.add(new MissingEdge(leftNodes[i], leftNodes[j]));
           }
           j++;
@@ -331,13 +331,13 @@ public class SafeSeparator {
 
     for (int v = ns.nextSetBit(0); v >= 0;
         v = ns.nextSetBit(v + 1)) {
-      if (g.neighborSet[v].cardinality() == 1) {
+      if (g.neighborSet(v).cardinality() == 1) {
         continue;
       }
       boolean useless = true;
       for (MissingEdge me: missingEdgeList) {
-        if (g.neighborSet[v].get(me.left1.vertex) ||
-            g.neighborSet[v].get(me.left2.vertex)) {
+        if (g.neighborSet(v).get(me.left1.vertex) ||
+            g.neighborSet(v).get(me.left2.vertex)) {
           useless = false;
         }
       }
@@ -638,7 +638,7 @@ public class SafeSeparator {
       int v = ns.nextSetBit(0);
       result.set(v);
       available.clear(v);
-      back = g.neighborSet[v];
+      back = g.neighborSet(v);
     }
     return result;
   }
@@ -647,7 +647,7 @@ public class SafeSeparator {
     int count = 0;
     for (int v = s.nextSetBit(0); v >= 0;
         v = s.nextSetBit(v + 1)) {
-      count += s.subtract(g.neighborSet[v]).cardinality() - 1;
+      count += s.subtract(g.neighborSet(v)).cardinality() - 1;
     }
     return count / 2;
   }
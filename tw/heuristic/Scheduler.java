@@ -0,0 +1,146 @@
+package tw.heuristic;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import tw.heuristic.MainDecomposer.Mode;
+
+/**
+ * Allocates the time of the rounds of improvement among the modes,
+ * from what each mode has cost and achieved so far.  The rate of a
+ * mode is its successes per second of CPU time, with one success and
+ * one second granted to every mode as a prior.  A round tries the modes
+ * by decreasing rate, and gives each the usual time multiplied by its
+ * share of the sum of the rates times the number of modes, within
+ * {@code MIN_WEIGHT} and {@code MAX_WEIGHT}, so that a mode which has
+ * not succeeded yet is still tried, briefly, in every round.
+ *
+ * The subsolvers limit themselves by counting steps, at a fixed number
+ * of steps per millisecond, and their milliseconds are far from those
+ * of the CPU.  The scheduler calibrates the ratio of the two for each
+ * mode from the runs so far, beginning with the greedy decompositions
+ * at startup, and caps the time of a mode so that it takes at most
+ * {@code MAX_CPU_MS} of CPU time.
+ *
+ * It also keeps, for each mode, by how many vertices the neighborhoods
+ * it improved exceeded the largest bag, and starts the next tries of
+ * the mode half way there.  Thread-safe.
+ */
+class Scheduler {
+  static final double MIN_WEIGHT = 0.25;
+  static final double MAX_WEIGHT = 2.5;
+  static final long MAX_CPU_MS = 10000;
+
+  /**
+   * The CPU time of the runs of a mode needed before its ratio is used
+   */
+  static final long MIN_CALIBRATION_MS = 20;
+
+  /**
+   * The weight of the latest success in the average offset
+   */
+  static final double DECAY = 0.2;
+
+  static final Mode[] MODES = Mode.values();
+
+  long[] tries = new long[MODES.length];
+  long[] successes = new long[MODES.length];
+  long[] cpuMs = new long[MODES.length];
+  double[] offset = new double[MODES.length];
+
+  // the runs calibrated with, including those outside the rounds
+  long[] calibrationCpuMs = new long[MODES.length];
+  long[] calibrationSolverMs = new long[MODES.length];
+
+  synchronized double rate(Mode mode) {
+    int m = mode.ordinal();
+    return (successes[m] + 1) * 1000.0 / (cpuMs[m] + 1000);
+  }
+
+  /**
+   * Returns the modes by decreasing rate
+   */
+  synchronized Mode[] order() {
+    Mode[] modes = MODES.clone();
+    final double[] rates = new double[MODES.length];
+    for (Mode mode: MODES) {
+      rates[mode.ordinal()] = rate(mode);
+    }
+    Arrays.sort(modes, new Comparator<Mode>() {
+      @Override
+      public int compare(Mode m1, Mode m2) {
+        return -Double.compare(rates[m1.ordinal()], rates[m2.ordinal()]);
+      }
+    });
+    return modes;
+  }
+
+  /**
+   * Returns the time, as counted by its subsolver, allotted to the
+   * given mode in a round in which each mode would be given
+   * {@code timeMS} without the scheduler
+   */
+  synchronized long budget(Mode mode, long timeMS) {
+    double sum = 0;
+    for (Mode m: MODES) {
+      sum += rate(m);
+    }
+    double weight = MODES.length * rate(mode) / sum;
+    weight = Math.min(MAX_WEIGHT, Math.max(MIN_WEIGHT, weight));
+    long budget = Math.max(1, (long) (timeMS * weight));
+    int m = mode.ordinal();
+    if (calibrationCpuMs[m] >= MIN_CALIBRATION_MS) {
+      double ratio = (double) calibrationSolverMs[m] / calibrationCpuMs[m];
+      budget = Math.min(budget, Math.max(1, (long) (MAX_CPU_MS * ratio)));
+    }
+    return budget;
+  }
+
+  /**
+   * Returns the size of the first neighborhood to try with the given
+   * mode around a bag of the given size
+   */
+  synchronized int startSize(Mode mode, int bagSize) {
+    return bagSize + (int) (offset[mode.ordinal()] / 2);
+  }
+
+  /**
+   * Records a try of the given mode
+   * @param success whether it improved the neighborhood
+   * @param cpuMs the CPU time it took
+   * @param solverMs the time its subsolver counted
+   * @param offset the size of the neighborhood less that of the bag
+   */
+  synchronized void record(Mode mode, boolean success,
+      long cpuMs, long solverMs, int offset) {
+    int m = mode.ordinal();
+    tries[m]++;
+    this.cpuMs[m] += cpuMs;
+    if (success) {
+      successes[m]++;
+      this.offset[m] += DECAY * (offset - this.offset[m]);
+    }
+    calibrate(mode, cpuMs, solverMs);
+  }
+
+  /**
+   * Adds a run of the subsolver of the given mode to its calibration
+   */
+  synchronized void calibrate(Mode mode, long cpuMs, long solverMs) {
+    int m = mode.ordinal();
+    calibrationCpuMs[m] += cpuMs;
+    calibrationSolverMs[m] += solverMs;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Mode mode: MODES) {
+      int m = mode.ordinal();
+      sb.append(mode + ": " + successes[m] + "/" + tries[m] +
+          " in " + cpuMs[m] + " ms, " + calibrationSolverMs[m] +
+          " solver ms in " + calibrationCpuMs[m] + " ms; ");
+    }
+    return sb.toString();
+  }
+}
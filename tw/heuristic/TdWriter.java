@@ -0,0 +1,185 @@
+package tw.heuristic;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A writer of tree decompositions in the PACE {@code td} format that
+ * formats the numbers into a reusable byte buffer, without making
+ * strings, and writes the buffer out whenever it is nearly full.
+ * The standard output is written through its file channel, after
+ * {@code System.out} is flushed so that the lines printed before keep
+ * their place.  Not thread-safe.
+ */
+public class TdWriter {
+  static final int CHUNK = 1 << 16;
+
+  /**
+   * The room needed by the digits of an int
+   */
+  static final int NUMBER_ROOM = 10;
+
+  WritableByteChannel channel;
+  OutputStream out;
+  byte[] buffer = new byte[CHUNK];
+  int length;
+
+  public TdWriter(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Creates a writer to the given stream, which is bypassed for
+   * the file channel of the standard output if it is {@code System.out}
+   * @param out the stream
+   */
+  public TdWriter(OutputStream out) {
+    if (out == System.out) {
+      System.out.flush();
+      channel = new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+    else {
+      channel = Channels.newChannel(out);
+      this.out = out;
+    }
+  }
+
+  /**
+   * Writes the given tree decomposition and flushes the buffer
+   * @param td the tree decomposition
+   */
+  public void write(TreeDecomposition td) throws IOException {
+    writeHeader(td.nb, td.width, td.g.n);
+    for (int i = 1; i <= td.nb; i++) {
+      writeBag(i, td.bags[i]);
+    }
+    for (int i = 1; i <= td.nb; i++) {
+      for (int j = 0; j < td.degree[i]; j++) {
+        int h = td.neighbor[i][j];
+        if (i < h) {
+          writeEdge(i, h);
+        }
+      }
+    }
+    finish();
+  }
+
+  /**
+   * Puts the solution line of a decomposition
+   * @param nb the number of bags
+   * @param width the width
+   * @param n the number of vertices of the graph
+   */
+  public void writeHeader(int nb, int width, int n) throws IOException {
+    put('s');
+    put(' ');
+    put('t');
+    put('d');
+    put(' ');
+    putNumber(nb);
+    put(' ');
+    putNumber(width + 1);
+    put(' ');
+    putNumber(n);
+    put('\n');
+  }
+
+  /**
+   * Puts the line of the ith bag
+   * @param i the number of the bag, from 1
+   * @param bag the vertices of the bag, numbered from 0
+   */
+  public void writeBag(int i, int[] bag) throws IOException {
+    put('b');
+    put(' ');
+    putNumber(i);
+    for (int j = 0; j < bag.length; j++) {
+      put(' ');
+      putNumber(bag[j] + 1);
+    }
+    put('\n');
+  }
+
+  /**
+   * Puts the line of the edge between the ith and the hth bags
+   */
+  public void writeEdge(int i, int h) throws IOException {
+    putNumber(i);
+    put(' ');
+    putNumber(h);
+    put('\n');
+  }
+
+  /**
+   * Puts the given bytes, such as lines encoded before, into the
+   * buffer, or writes them out after the buffer if they do not fit
+   * @param bytes the bytes
+   */
+  public void write(byte[] bytes) throws IOException {
+    if (length + bytes.length <= buffer.length) {
+      System.arraycopy(bytes, 0, buffer, length, bytes.length);
+      length += bytes.length;
+      return;
+    }
+    flush();
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Writes out the buffer and flushes the stream
+   */
+  public void finish() throws IOException {
+    flush();
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  void put(char c) throws IOException {
+    if (length == buffer.length) {
+      flush();
+    }
+    buffer[length++] = (byte) c;
+  }
+
+  /**
+   * Puts the decimal digits of the given non-negative number
+   */
+  void putNumber(int x) throws IOException {
+    if (length + NUMBER_ROOM > buffer.length) {
+      flush();
+    }
+    int end = length + digits(x);
+    int p = end;
+    do {
+      buffer[--p] = (byte) ('0' + x % 10);
+      x /= 10;
+    } while (x > 0);
+    length = end;
+  }
+
+  static int digits(int x) {
+    int d = 1;
+    while (x >= 10) {
+      x /= 10;
+      d++;
+    }
+    return d;
+  }
+
+  void flush() throws IOException {
+    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    length = 0;
+  }
+}
@@ -274,30 +274,11 @@ public class TreeDecomposition {
 	 * @param ps print stream
 	 */
 	public void writeTo(PrintStream ps) {
-    StringBuilder sb = new StringBuilder();
-		//ps.println("s td " + nb + " " + (width + 1) + " " + g.n);
-    sb.append("s td " + nb + " " + (width + 1) + " " + g.n + "\n");
-		for (int i = 1; i <= nb; i++) {
-			//ps.print("b " + i);
-      sb.append("b " + i);
-			for (int j = 0; j < bags[i].length; j++) {
-				//ps.print(" " + (bags[i][j] + 1));
-        sb.append(" " + (bags[i][j] + 1));
-			}
-      sb.append("\n");
-			//ps.println();
-		}
-		for (int i = 1; i <= nb; i++) {
-			for (int j = 0; j < degree[i]; j++) {
-				int h = neighbor[i][j];
-				if (i < h) {
-					//ps.println(i + " " + h);
-          sb.append(i + " " + h + "\n");
-				}
-			}
+		try {
+			new TdWriter(ps).write(this);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-    ps.print(sb.toString());
-    ps.flush();
 	}
 
 	/**
@@ -664,7 +645,7 @@ public class TreeDecomposition {
 
 		for (int v = b.nextSetBit(0); v >= 0; 
 				v = b.nextSetBit(v + 1)) {
-			VertexSet ns = g.neighborSet[v].intersectWith(b);
+			VertexSet ns = g.neighborSet(v).intersectWith(b);
 			for (VertexSet sep: seps) {
 				if (sep.get(v)) {
 					ns.or(sep);
@@ -747,7 +728,7 @@ public class TreeDecomposition {
 				v = b.nextSetBit(v + 1)) {
 			for (int w = b.nextSetBit(v + 1); w >= 0; 
 					w = b.nextSetBit(w + 1)) {
-				if (g.neighborSet[v].get(w)) {
+				if (g.neighborSet(v).get(w)) {
 					continue;
 				}
 				boolean covered = false;
@@ -0,0 +1,337 @@
+package tw.heuristic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * An immutable tree decomposition, kept as an array of references to
+ * chunks of {@code CHUNK} consecutive bags together with their lines in
+ * the td format.  A snapshot is built from the one before it: a bag
+ * found in the previous snapshot keeps its number and shares its array,
+ * and a chunk whose bags and neighbors are all unchanged is shared as it
+ * is, so that only the chunks touched by an improvement are copied and
+ * encoded again.  Writing a snapshot out copies the encoded chunks.
+ */
+public class TreeDecompositionSnapshot {
+  static final int CHUNK = 256;
+
+  final Graph g;
+  final int nb;
+  final int width;
+  final Chunk[] chunks;
+
+  /**
+   * The bags numbered from {@code first} on, their neighbors, and their
+   * lines in the td format
+   */
+  static final class Chunk {
+    final int first;
+    final int[][] bags;
+    final int[][] neighbors;
+    final byte[] bagLines;
+    final byte[] edgeLines;
+
+    Chunk(int first, int[][] bags, int[][] neighbors) {
+      this.first = first;
+      this.bags = bags;
+      this.neighbors = neighbors;
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TdWriter writer = new TdWriter(out);
+        for (int j = 0; j < bags.length; j++) {
+          writer.writeBag(first + j, bags[j]);
+        }
+        writer.finish();
+        bagLines = out.toByteArray();
+
+        out.reset();
+        for (int j = 0; j < bags.length; j++) {
+          for (int h: neighbors[j]) {
+            if (first + j < h) {
+              writer.writeEdge(first + j, h);
+            }
+          }
+        }
+        writer.finish();
+        edgeLines = out.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    boolean sameAs(int[][] bags, int[][] neighbors) {
+      if (bags.length != this.bags.length) {
+        return false;
+      }
+      for (int j = 0; j < bags.length; j++) {
+        if (bags[j] != this.bags[j] ||
+            !Arrays.equals(neighbors[j], this.neighbors[j])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private TreeDecompositionSnapshot(Graph g, int nb, int width,
+      Chunk[] chunks) {
+    this.g = g;
+    this.nb = nb;
+    this.width = width;
+    this.chunks = chunks;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Returns a tree decomposition with the bags of this snapshot, which
+   * shares their arrays
+   */
+  public TreeDecomposition toTreeDecomposition() {
+    TreeDecomposition td = new TreeDecomposition(nb, width, g);
+    for (Chunk chunk: chunks) {
+      for (int j = 0; j < chunk.bags.length; j++) {
+        int i = chunk.first + j;
+        td.bags[i] = chunk.bags[j];
+        td.degree[i] = chunk.neighbors[j].length;
+        td.neighbor[i] = chunk.neighbors[j].clone();
+      }
+    }
+    return td;
+  }
+
+  /**
+   * Writes this decomposition in the td format and flushes the writer
+   */
+  public void writeTo(TdWriter writer) throws IOException {
+    writer.writeHeader(nb, width, g.n);
+    for (Chunk chunk: chunks) {
+      writer.write(chunk.bagLines);
+    }
+    for (Chunk chunk: chunks) {
+      writer.write(chunk.edgeLines);
+    }
+    writer.finish();
+  }
+
+  /**
+   * A key of the bags of a snapshot by their vertices
+   */
+  private static final class Key {
+    final int[] bag;
+    final int hash;
+
+    Key(int[] bag) {
+      this.bag = bag;
+      this.hash = Arrays.hashCode(bag);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(bag, ((Key) o).bag);
+    }
+  }
+
+  /**
+   * Collects the bags and the tree edges of a decomposition of the
+   * whole graph, from the flattened bags of its components, and builds
+   * the snapshot of the decomposition.  The decomposition of each
+   * component is connected to the first bag.
+   */
+  public static class Builder {
+    Graph g;
+    ArrayList<int[]> bags = new ArrayList<>();
+    int[] edges = new int[16];
+    int ne;
+
+    public Builder(Graph g) {
+      this.g = g;
+    }
+
+    /**
+     * Adds the decomposition of a component given by a flattened bag,
+     * the trivial one if the bag has no nested bags, as
+     * {@link Bag#toTreeDecomposition()} makes it
+     * @param bag the flattened bag
+     * @param inv the vertices of the whole graph of those of the bag,
+     * or null if the bag is of the whole graph
+     */
+    public void add(Bag bag, int[] inv) {
+      int first = bags.size();
+      if (bag.nestedBags == null || bag.nestedBags.isEmpty()) {
+        bags.add(convert(bag.graph.all.toArray(), inv));
+      }
+      else {
+        IdentityHashMap<Bag, Integer> index = new IdentityHashMap<>();
+        for (Bag nested: bag.nestedBags) {
+          index.put(nested, bags.size());
+          bags.add(convert(nested.vertexSet.toArray(), inv));
+        }
+
+        for (Separator separator: bag.separators) {
+          VertexSet vs = separator.vertexSet;
+          Bag full = null;
+          for (Bag b: separator.incidentBags) {
+            if (vs.isSubset(b.vertexSet)) {
+              full = b;
+              break;
+            }
+          }
+
+          int j;
+          if (full != null) {
+            j = index.get(full);
+          }
+          else {
+            j = bags.size();
+            bags.add(convert(vs.toArray(), inv));
+          }
+          for (Bag b: separator.incidentBags) {
+            if (b != full) {
+              addEdge(j, index.get(b));
+            }
+          }
+        }
+      }
+      if (first > 0) {
+        addEdge(0, first);
+      }
+    }
+
+    static int[] convert(int[] bag, int[] inv) {
+      if (inv != null) {
+        for (int i = 0; i < bag.length; i++) {
+          bag[i] = inv[bag[i]];
+        }
+      }
+      return bag;
+    }
+
+    void addEdge(int i, int j) {
+      if (2 * ne + 2 > edges.length) {
+        edges = Arrays.copyOf(edges, 2 * edges.length);
+      }
+      edges[2 * ne] = i;
+      edges[2 * ne + 1] = j;
+      ne++;
+    }
+
+    /**
+     * Builds the snapshot of the decomposition collected, sharing
+     * what it can with the given snapshot
+     * @param previous a snapshot of a decomposition of the same graph,
+     * or null
+     */
+    public TreeDecompositionSnapshot build(
+        TreeDecompositionSnapshot previous) {
+      int nb = bags.size();
+      int width = -1;
+      for (int[] bag: bags) {
+        width = Math.max(width, bag.length - 1);
+      }
+
+      // the bags numbered from 1, those of the previous snapshot
+      // keeping their numbers if not beyond nb
+      int[] number = new int[nb];
+      int[][] pool = new int[nb + 1][];
+      if (previous != null && previous.g == g) {
+        HashMap<Key, Integer> index = new HashMap<>();
+        for (Chunk chunk: previous.chunks) {
+          for (int j = 0; j < chunk.bags.length; j++) {
+            if (chunk.first + j <= nb) {
+              index.putIfAbsent(new Key(chunk.bags[j]), chunk.first + j);
+            }
+          }
+        }
+        for (int k = 0; k < nb; k++) {
+          Integer i = index.remove(new Key(bags.get(k)));
+          if (i != null) {
+            number[k] = i;
+            pool[i] = previous.bagAt(i);
+          }
+        }
+      }
+      int free = 1;
+      for (int k = 0; k < nb; k++) {
+        if (number[k] == 0) {
+          while (pool[free] != null) {
+            free++;
+          }
+          number[k] = free;
+          pool[free] = bags.get(k);
+        }
+      }
+
+      int[] degree = new int[nb + 1];
+      for (int e = 0; e < 2 * ne; e += 2) {
+        if (edges[e] != edges[e + 1]) {
+          degree[number[edges[e]]]++;
+          degree[number[edges[e + 1]]]++;
+        }
+      }
+      int[][] neighbors = new int[nb + 1][];
+      for (int i = 1; i <= nb; i++) {
+        neighbors[i] = new int[degree[i]];
+        degree[i] = 0;
+      }
+      for (int e = 0; e < 2 * ne; e += 2) {
+        if (edges[e] != edges[e + 1]) {
+          int i = number[edges[e]];
+          int h = number[edges[e + 1]];
+          neighbors[i][degree[i]++] = h;
+          neighbors[h][degree[h]++] = i;
+        }
+      }
+      for (int i = 1; i <= nb; i++) {
+        neighbors[i] = distinct(neighbors[i]);
+      }
+
+      Chunk[] chunks = new Chunk[(nb + CHUNK - 1) / CHUNK];
+      for (int c = 0; c < chunks.length; c++) {
+        int first = c * CHUNK + 1;
+        int last = Math.min(nb, first + CHUNK - 1);
+        int[][] chunkBags = Arrays.copyOfRange(pool, first, last + 1);
+        int[][] chunkNeighbors =
+          Arrays.copyOfRange(neighbors, first, last + 1);
+        if (previous != null && previous.g == g &&
+            c < previous.chunks.length &&
+            previous.chunks[c].sameAs(chunkBags, chunkNeighbors)) {
+          chunks[c] = previous.chunks[c];
+        }
+        else {
+          chunks[c] = new Chunk(first, chunkBags, chunkNeighbors);
+        }
+      }
+      return new TreeDecompositionSnapshot(g, nb, width, chunks);
+    }
+
+    /**
+     * Returns the given array sorted and without repetitions
+     */
+    static int[] distinct(int[] a) {
+      Arrays.sort(a);
+      int k = 0;
+      for (int i = 0; i < a.length; i++) {
+        if (k == 0 || a[i] != a[k - 1]) {
+          a[k++] = a[i];
+        }
+      }
+      return k == a.length ? a : Arrays.copyOf(a, k);
+    }
+  }
+
+  int[] bagAt(int i) {
+    return chunks[(i - 1) / CHUNK].bags[(i - 1) % CHUNK];
+  }
+}
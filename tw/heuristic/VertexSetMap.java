@@ -0,0 +1,270 @@
+package tw.heuristic;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from vertex sets of a graph with a given number of vertices,
+ * by open addressing with linear probing.  The keys are not kept as
+ * {@code VertexSet} objects: their members are copied inline into one
+ * {@code int} array, which suits the small sets held as
+ * {@code ArraySet}s on large graphs, and the slots keep the hash, the
+ * offset and the size of their key, so a lookup touches the probed
+ * slots and members and nothing else.  The keys returned by iteration
+ * are new {@code VertexSet}s.  Removal is not supported.
+ * Not thread-safe.
+ */
+public class VertexSetMap<V> extends AbstractMap<VertexSet, V> {
+  static final float LOAD_FACTOR = 0.5f;
+
+  int n;
+  int capacity;
+  int size;
+
+  /**
+   * The hash of the key in each slot, which is never 0 for a used slot
+   */
+  int[] hashes;
+  int[] offsets;
+  int[] sizes;
+  Object[] values;
+
+  /**
+   * The members of the keys, each key in a consecutive run
+   */
+  int[] members = new int[64];
+  int end;
+
+  /**
+   * Creates an empty map for vertex sets of a graph with {@code n}
+   * vertices
+   * @param n the number of vertices
+   */
+  public VertexSetMap(int n) {
+    this.n = n;
+    allocate(16);
+  }
+
+  void allocate(int capacity) {
+    this.capacity = capacity;
+    hashes = new int[capacity];
+    offsets = new int[capacity];
+    sizes = new int[capacity];
+    values = new Object[capacity];
+  }
+
+  static int hash(VertexSet set) {
+    int hash = set.hashCode() * 0x9E3779B9;
+    hash ^= hash >>> 16;
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Returns the slot holding the given key, or the empty slot where
+   * it would be put
+   */
+  int slot(VertexSet key, int hash, int cardinality) {
+    int mask = capacity - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int h = hashes[slot];
+      if (h == 0) {
+        return slot;
+      }
+      if (h == hash && sizes[slot] == cardinality &&
+          keyEquals(slot, key)) {
+        return slot;
+      }
+    }
+  }
+
+  boolean keyEquals(int slot, VertexSet key) {
+    int p = offsets[slot];
+    for (int v = key.nextSetBit(0); v >= 0; v = key.nextSetBit(v + 1)) {
+      if (members[p++] != v) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    if (!(key instanceof VertexSet)) {
+      return null;
+    }
+    VertexSet set = (VertexSet) key;
+    return (V) values[slot(set, hash(set), set.cardinality())];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(VertexSet key, V value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    int hash = hash(key);
+    int cardinality = key.cardinality();
+    int slot = slot(key, hash, cardinality);
+    V old = (V) values[slot];
+    if (old == null) {
+      if (size + 1 > capacity * LOAD_FACTOR) {
+        grow();
+        slot = slot(key, hash, cardinality);
+      }
+      if (end + cardinality > members.length) {
+        members = Arrays.copyOf(members,
+            Math.max(2 * members.length, end + cardinality));
+      }
+      hashes[slot] = hash;
+      offsets[slot] = end;
+      sizes[slot] = cardinality;
+      for (int v = key.nextSetBit(0); v >= 0; v = key.nextSetBit(v + 1)) {
+        members[end++] = v;
+      }
+      size++;
+    }
+    values[slot] = value;
+    return old;
+  }
+
+  @Override
+  public V putIfAbsent(VertexSet key, V value) {
+    V old = get(key);
+    if (old == null) {
+      put(key, value);
+    }
+    return old;
+  }
+
+  void grow() {
+    int[] oldHashes = hashes;
+    int[] oldOffsets = offsets;
+    int[] oldSizes = sizes;
+    Object[] oldValues = values;
+    int oldCapacity = capacity;
+    allocate(2 * capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < oldCapacity; i++) {
+      int hash = oldHashes[i];
+      if (hash == 0) {
+        continue;
+      }
+      int slot = hash & mask;
+      while (hashes[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      hashes[slot] = hash;
+      offsets[slot] = oldOffsets[i];
+      sizes[slot] = oldSizes[i];
+      values[slot] = oldValues[i];
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(hashes, 0);
+    Arrays.fill(values, null);
+    end = 0;
+    size = 0;
+  }
+
+  /**
+   * Returns the key in the given slot as a new {@code VertexSet}
+   */
+  VertexSet keyAt(int slot) {
+    int p = offsets[slot];
+    return new VertexSet(n, Arrays.copyOfRange(members, p, p + sizes[slot]));
+  }
+
+  @Override
+  public Set<Map.Entry<VertexSet, V>> entrySet() {
+    return new AbstractSet<Map.Entry<VertexSet, V>>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Map.Entry<VertexSet, V>> iterator() {
+        return new Iterator<Map.Entry<VertexSet, V>>() {
+          int slot = nextSlot(0);
+
+          @Override
+          public boolean hasNext() {
+            return slot < capacity;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public Map.Entry<VertexSet, V> next() {
+            if (slot >= capacity) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<VertexSet, V> entry = new SimpleImmutableEntry<>(
+                keyAt(slot), (V) values[slot]);
+            slot = nextSlot(slot + 1);
+            return entry;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<V> iterator() {
+        return new Iterator<V>() {
+          int slot = nextSlot(0);
+
+          @Override
+          public boolean hasNext() {
+            return slot < capacity;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public V next() {
+            if (slot >= capacity) {
+              throw new NoSuchElementException();
+            }
+            V value = (V) values[slot];
+            slot = nextSlot(slot + 1);
+            return value;
+          }
+        };
+      }
+    };
+  }
+
+  int nextSlot(int from) {
+    while (from < capacity && hashes[from] == 0) {
+      from++;
+    }
+    return from;
+  }
+}
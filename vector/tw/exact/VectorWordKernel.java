@@ -0,0 +1,141 @@
+package tw.exact;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@code WordKernel} on the incubating Vector API.
+ *
+ * The summaries of a block of sibling nodes are tested one lane per node:
+ * as they are stored side by side, a word of a register of siblings is a
+ * single load, and the subset test and the difference count run across
+ * the lanes, so that a node with many children is filtered a register of
+ * children at a time whatever the number of vertices.  The siblings left
+ * over, the blocks narrower than a register and the registers with few
+ * candidates are tested by the scalar code.  The Vector API of JDK 17 has
+ * no lane-wise population count, so the count is the usual shift and add
+ * reduction within each lane.  Most nodes have only a few children, so
+ * the gain on the whole sieve is small.
+ *
+ * The tests of single vectors combine the words with {@code AND_NOT} a
+ * whole register at a time, which only pays for vectors of at least a
+ * register of words; the difference count reduces to scalar
+ * {@code Long.bitCount} only for the chunks that are not empty.
+ *
+ * Built by {@code make vector} and loaded reflectively by
+ * {@code WordKernel.create}; run with
+ * {@code --add-modules jdk.incubator.vector}.  An instance keeps scratch
+ * space and must not be shared between threads.
+ */
+class VectorWordKernel extends WordKernel {
+    private static final VectorSpecies<Long> SPECIES =
+            LongVector.SPECIES_PREFERRED;
+
+    private final long[] scratch = new long[SPECIES.length()];
+
+    @Override
+    boolean isSubset(long[] a, int aBase, long[] b, int bBase, int words) {
+        int i = 0;
+        int bound = SPECIES.loopBound(words);
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, a, aBase + i);
+            LongVector vb = LongVector.fromArray(SPECIES, b, bBase + i);
+            if (va.lanewise(VectorOperators.AND_NOT, vb)
+                    .reduceLanes(VectorOperators.OR) != 0) {
+                return false;
+            }
+        }
+        for (; i < words; i++) {
+            if ((a[aBase + i] & ~b[bBase + i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    long filter(long[] unionOfSSets, long[] intersectionOfNSets, int words,
+            int base, int stride, int count, long candidates, long[] queryS,
+            long[] queryN, int k) {
+        int lanes = SPECIES.length();
+        long lane = (1L << lanes) - 1;
+        long passed = 0;
+        int j = 0;
+        for (; j + lanes <= count; j += lanes) {
+            long group = candidates >>> j & lane;
+            if (2 * Long.bitCount(group) < lanes) {
+                // too few candidates to pay for a register
+                passed |= super.filter(unionOfSSets, intersectionOfNSets,
+                        words, base + j, stride, lanes, group, queryS, queryN,
+                        k) << j;
+                continue;
+            }
+            LongVector missing = LongVector.zero(SPECIES);
+            LongVector excess = LongVector.zero(SPECIES);
+            for (int i = 0, p = base + j; i < words; i++, p += stride) {
+                LongVector union =
+                        LongVector.fromArray(SPECIES, unionOfSSets, p);
+                missing = missing.or(LongVector.broadcast(SPECIES, queryS[i])
+                        .lanewise(VectorOperators.AND_NOT, union));
+                LongVector intersection =
+                        LongVector.fromArray(SPECIES, intersectionOfNSets, p);
+                excess = excess.add(bitCount(intersection.lanewise(
+                        VectorOperators.AND_NOT, queryN[i])));
+            }
+            VectorMask<Long> pass = missing.eq(0)
+                    .and(excess.compare(VectorOperators.LE, k));
+            passed |= pass.toLong() << j;
+        }
+        if (j < count) {
+            passed |= super.filter(unionOfSSets, intersectionOfNSets, words,
+                    base + j, stride, count - j, candidates >>> j, queryS,
+                    queryN, k) << j;
+        }
+        return passed & candidates;
+    }
+
+    /**
+     * Returns the number of members of each lane
+     */
+    private static LongVector bitCount(LongVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1)
+                .and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(
+                x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4))
+                .and(0x0f0f0f0f0f0f0f0fL);
+        return x.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+    }
+
+    @Override
+    boolean differenceExceeds(long[] a, int aBase, long[] b, int bBase,
+            int words, int k) {
+        int count = 0;
+        int i = 0;
+        int bound = SPECIES.loopBound(words);
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, a, aBase + i);
+            LongVector vb = LongVector.fromArray(SPECIES, b, bBase + i);
+            LongVector diff = va.lanewise(VectorOperators.AND_NOT, vb);
+            if (diff.reduceLanes(VectorOperators.OR) == 0) {
+                continue;
+            }
+            diff.intoArray(scratch, 0);
+            for (long word : scratch) {
+                count += Long.bitCount(word);
+            }
+            if (count > k) {
+                return true;
+            }
+        }
+        for (; i < words; i++) {
+            count += Long.bitCount(a[aBase + i] & ~b[bBase + i]);
+            if (count > k) {
+                return true;
+            }
+        }
+        return false;
+    }
+}